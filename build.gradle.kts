@@ -30,6 +30,7 @@ dependencies {
     implementation("org.springframework.boot:spring-boot-starter-undertow")
     implementation("org.springframework.boot:spring-boot-starter-validation")
     implementation("org.springframework.boot:spring-boot-starter-data-jpa")
+    implementation("org.springframework.boot:spring-boot-starter-actuator")
     implementation("org.postgresql:postgresql")
     implementation("org.liquibase:liquibase-core:$liquibaseVersion")
     implementation("dev.d1s:spring-boot-starter-advice:$starterAdviceVersion")
@@ -45,6 +46,7 @@ dependencies {
     implementation("org.cryptonode.jncryptor:jncryptor:$jnCryptorVersion")
     implementation("org.jetbrains:annotations:$jetbrainsAnnotationsVersion")
     implementation("commons-codec:commons-codec:$apacheCommonsCodecVersion")
+    implementation("com.github.ben-manes.caffeine:caffeine")
     implementation(kotlin("stdlib")) // for backwards compatibility
     compileOnly("org.projectlombok:lombok")
     annotationProcessor("org.springframework.boot:spring-boot-configuration-processor")
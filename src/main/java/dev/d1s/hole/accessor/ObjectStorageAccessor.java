@@ -17,16 +17,30 @@
 package dev.d1s.hole.accessor;
 
 import dev.d1s.hole.entity.storageObject.StorageObject;
+import dev.d1s.hole.entity.storageObject.StorageTier;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
 
 public interface ObjectStorageAccessor {
 
+    boolean supportsRange();
+
+    boolean supportsZeroCopy();
+
+    boolean supportsAtomicReplace();
+
+    @NotNull
+    ObjectHandle openObject(@NotNull final StorageObject object);
+
+    // every stored copy of the content, so each of them can be verified.
     @NotNull
-    InputStream createInputStream(@NotNull final StorageObject object);
+    List<ObjectHandle> openCopies(@NotNull final StorageObject object);
+
+    void closeObject(@NotNull final ObjectHandle handle);
 
     void closeInputStream(@NotNull final InputStream in);
 
@@ -35,7 +49,39 @@ public interface ObjectStorageAccessor {
 
     void closeOutputStream(@NotNull final OutputStream out);
 
+    void commitOutputStream(@NotNull final OutputStream out);
+
+    void discardOutputStream(@NotNull final OutputStream out);
+
+    @NotNull
+    UploadContent createUploadContent(final long length);
+
+    // turns the completed upload into a staged output stream, which is then committed, published or discarded.
+    @NotNull
+    OutputStream completeUploadContent(@NotNull final UploadContent content, @NotNull final StorageObject object);
+
+    void discardUploadContent(@NotNull final UploadContent content);
+
+    void publishBlob(@NotNull final OutputStream out, @NotNull final String digest);
+
+    // whether any copy of the object's content is stored.
+    boolean containsObject(@NotNull final StorageObject object);
+
     void deleteObject(@NotNull final StorageObject object);
 
+    void deleteBlob(@NotNull final String digest);
+
+    // moves the content to the place it belongs to after the storage layout changed,
+    // returns whether it was moved. The object records its new location.
+    boolean rebalanceObject(@NotNull final StorageObject object);
+
+    boolean rebalanceBlob(@NotNull final String digest);
+
+    boolean supportsTiering();
+
+    // moves the content to the roots of the tier, stored compressed if requested,
+    // returns whether it was moved. The object records its new location.
+    boolean moveObject(@NotNull final StorageObject object, @NotNull final StorageTier tier, final boolean compress);
+
     void processIoException(@NotNull final IOException e);
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// The content of an upload session, written at arbitrary offsets and possibly in parallel.
+public interface UploadContent {
+
+    long getLength();
+
+    void write(final long position, @NotNull final InputStream in, final long length) throws IOException;
+
+    @NotNull
+    InputStream createInputStream(final long position, final long length);
+
+    // false once a commit consumed the content, a failed commit leaves it available for a retry.
+    boolean isAvailable();
+}
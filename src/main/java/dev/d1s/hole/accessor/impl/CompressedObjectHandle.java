@@ -0,0 +1,103 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor.impl;
+
+import dev.d1s.hole.accessor.ObjectHandle;
+import dev.d1s.hole.exception.storage.StorageObjectAccessException;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.GZIPInputStream;
+
+// A cold object stored compressed: the original size followed by the gzip stream.
+// The ranges are served by inflating from the start, the cold objects are rarely read.
+final class CompressedObjectHandle implements ObjectHandle {
+
+    static final int HEADER_SIZE = Long.BYTES;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private boolean closed;
+
+    CompressedObjectHandle(final FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        final var header = ByteBuffer.allocate(HEADER_SIZE);
+
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) == -1) {
+                throw new IOException("The compressed object is truncated.");
+            }
+        }
+
+        this.size = header.flip().getLong();
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @NotNull
+    @Override
+    public InputStream createInputStream() {
+        return this.createInputStream(0L, size);
+    }
+
+    @NotNull
+    @Override
+    public InputStream createInputStream(final long position, final long length) {
+        try {
+            final var in = new GZIPInputStream(
+                    new BufferedInputStream(new PositionalInputStream(channel, HEADER_SIZE, channel.size()), BUFFER_SIZE),
+                    BUFFER_SIZE
+            );
+
+            IOUtils.skipFully(in, Math.min(position, size));
+
+            return new BoundedInputStream(in, Math.max(0L, Math.min(length, size - position)));
+        } catch (final IOException e) {
+            throw new StorageObjectAccessException();
+        }
+    }
+
+    @Nullable
+    @Override
+    public FileChannel getFileChannel() {
+        // the stored bytes are not the content.
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            channel.close();
+        }
+    }
+}
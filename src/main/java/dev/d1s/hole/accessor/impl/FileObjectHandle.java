@@ -0,0 +1,100 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor.impl;
+
+import dev.d1s.hole.accessor.ObjectHandle;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+public final class FileObjectHandle implements ObjectHandle {
+
+    private final FileChannel channel;
+
+    private final long offset;
+
+    private final long size;
+
+    @Nullable
+    private final Runnable release;
+
+    private boolean closed;
+
+    public FileObjectHandle(@NotNull final FileChannel channel) throws IOException {
+        this(channel, 0L, channel.size(), null);
+    }
+
+    // A region of a channel owned by someone else: the release callback is invoked on close
+    // instead of closing the channel.
+    public FileObjectHandle(
+            @NotNull final FileChannel channel,
+            final long offset,
+            final long size,
+            @Nullable final Runnable release
+    ) {
+        this.channel = channel;
+        this.offset = offset;
+        this.size = size;
+        this.release = release;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @NotNull
+    @Override
+    public InputStream createInputStream() {
+        return this.createInputStream(0L, size);
+    }
+
+    @NotNull
+    @Override
+    public InputStream createInputStream(final long position, final long length) {
+        return new PositionalInputStream(
+                channel,
+                offset + Math.min(position, size),
+                offset + Math.min(position + length, size)
+        );
+    }
+
+    @Nullable
+    @Override
+    public FileChannel getFileChannel() {
+        // the whole channel would be transferred, so the regions are read positionally only.
+        return release == null ? channel : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        if (release != null) {
+            release.run();
+        } else {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,1142 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor.impl;
+
+import dev.d1s.hole.accessor.ObjectHandle;
+import dev.d1s.hole.accessor.ObjectStorageAccessor;
+import dev.d1s.hole.accessor.UploadContent;
+import dev.d1s.hole.accessor.impl.pack.PackFileStore;
+import dev.d1s.hole.constant.properties.ConfigurationPropertiesPrefixConstants;
+import dev.d1s.hole.constant.storage.StorageBackendConstants;
+import dev.d1s.hole.constant.storage.StorageFileConstants;
+import dev.d1s.hole.entity.storageObject.StorageObject;
+import dev.d1s.hole.entity.storageObject.StorageTier;
+import dev.d1s.hole.exception.storage.StorageObjectAccessException;
+import dev.d1s.hole.factory.StoragePathFactory;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+@Component
+@ConditionalOnProperty(
+        prefix = ConfigurationPropertiesPrefixConstants.STORAGE,
+        name = StorageBackendConstants.BACKEND_PROPERTY,
+        havingValue = StorageBackendConstants.FILESYSTEM_BACKEND,
+        matchIfMissing = true
+)
+public class FileObjectStorageAccessor implements ObjectStorageAccessor, InitializingBean {
+
+    private static final String UPLOAD_DIRECTORY = "uploads";
+
+    private static final int TRANSCODE_BUFFER_SIZE = 64 * 1024;
+
+    private static final Comparator<StorageRoot> LOAD_ORDER = Comparator
+            .comparing((StorageRoot root) -> !root.isHealthy())
+            .thenComparingInt(StorageRoot::getActiveReads)
+            .thenComparingLong(StorageRoot::getOpenLatency);
+
+    private static final Logger log = LogManager.getLogger();
+
+    private StoragePathFactory storagePathFactory;
+
+    private PackFileStore packFileStore;
+
+    private MappedObjectPool mappedObjectPool;
+
+    private FileSynchronizer fileSynchronizer;
+
+    private StorageRootRing storageRootRing;
+
+    private boolean atomicReplace;
+
+    @Override
+    public boolean supportsRange() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsZeroCopy() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsAtomicReplace() {
+        return atomicReplace;
+    }
+
+    @NotNull
+    @Override
+    public ObjectHandle openObject(@NotNull StorageObject object) {
+        final var packedHandle = packFileStore.open(this.getKey(object));
+
+        if (packedHandle != null) {
+            return packedHandle;
+        }
+
+        try {
+            return this.openReplica(this.getPaths(object), this.getTier(object));
+        } catch (final IOException e) {
+            throw this.createException(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    public List<ObjectHandle> openCopies(@NotNull StorageObject object) {
+        final var packedHandle = packFileStore.open(this.getKey(object));
+
+        if (packedHandle != null) {
+            return List.of(packedHandle);
+        }
+
+        final var handles = new ArrayList<ObjectHandle>();
+
+        try {
+            for (final var path : this.getPaths(object)) {
+                try {
+                    handles.add(this.openFile(path));
+                } catch (final NoSuchFileException e) {
+                    // not one of the replicas.
+                }
+            }
+
+            if (handles.isEmpty()) {
+                throw new NoSuchFileException(object.getId());
+            }
+
+            return handles;
+        } catch (final IOException e) {
+            handles.forEach(IOUtils::closeQuietly);
+
+            throw this.createException(e);
+        }
+    }
+
+    @Override
+    public void closeObject(@NotNull ObjectHandle handle) {
+        try {
+            handle.close();
+        } catch (final IOException e) {
+            throw this.createException(e);
+        }
+    }
+
+    @Override
+    public void closeInputStream(@NotNull InputStream in) {
+        try {
+            in.close();
+        } catch (final IOException e) {
+            throw this.createException(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    public OutputStream createOutputStream(@NotNull StorageObject object) {
+        try {
+            final var id = Objects.requireNonNull(object.getId());
+
+            // the overwrites are placed anew too, the copies on the previous roots are removed on commit.
+            final var replicas = storageRootRing.selectReplicas(id, 0L);
+            final var root = replicas.get(0);
+
+            final var path = storagePathFactory.createPath(root.getPath(), id);
+
+            this.createDirectories(path.getParent(), root);
+
+            // the content is written next to the object and published with an atomic rename on commit,
+            // so the readers never observe a missing or a partially written object.
+            final var temporaryPath = this.createTemporaryPath(path);
+
+            final var out = new StagedFileOutputStream(
+                    Files.newOutputStream(temporaryPath),
+                    id,
+                    replicas,
+                    temporaryPath,
+                    path,
+                    null
+            );
+
+            this.recordRoot(object, root);
+
+            return out;
+        } catch (final IOException e) {
+            throw this.createException(e);
+        }
+    }
+
+    @Override
+    public void closeOutputStream(@NotNull OutputStream out) {
+        try {
+            out.close();
+        } catch (final IOException e) {
+            throw this.createException(e);
+        }
+    }
+
+    @Override
+    public void commitOutputStream(@NotNull OutputStream out) {
+        final var stagedOut = this.castOutputStream(out);
+
+        try {
+            stagedOut.close();
+
+            final var id = stagedOut.id;
+
+            if (packFileStore.isPackable(Files.size(stagedOut.temporaryPath))) {
+                packFileStore.put(id, stagedOut.temporaryPath);
+
+                Files.delete(stagedOut.temporaryPath);
+
+                // the previous content might have been too large for the pack.
+                this.deleteCopies(id, Set.of());
+            } else {
+                final var temporaryPath = stagedOut.temporaryPath;
+                final var path = stagedOut.path;
+
+                fileSynchronizer.sync(temporaryPath, () -> this.move(temporaryPath, path), path.getParent());
+
+                this.mirror(path, stagedOut.replicas, root -> storagePathFactory.createPath(root.getPath(), id));
+
+                packFileStore.delete(id);
+
+                this.deleteCopies(id, this.createPaths(stagedOut.replicas, id, false));
+            }
+
+            this.deleteFlatCopy(id);
+        } catch (final IOException e) {
+            this.discardOutputStream(out);
+
+            throw this.createException(e);
+        }
+    }
+
+    @Override
+    public void discardOutputStream(@NotNull OutputStream out) {
+        final var stagedOut = this.castOutputStream(out);
+
+        try {
+            stagedOut.close();
+
+            final var upload = stagedOut.upload;
+
+            // the upload content belongs to its session, which discards it when the session is removed.
+            if (upload != null) {
+                if (Files.exists(upload.getPath())) {
+                    upload.reopen();
+                }
+
+                return;
+            }
+
+            Files.deleteIfExists(stagedOut.temporaryPath);
+        } catch (final IOException e) {
+            throw this.createException(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    public UploadContent createUploadContent(final long length) {
+        try {
+            final var name = UUID.randomUUID().toString();
+
+            // the object is later placed on the same root, so the upload is renamed into place without copying.
+            final var root = storageRootRing.select(name, length);
+
+            final var directory = root.getPath().resolve(UPLOAD_DIRECTORY);
+
+            Files.createDirectories(directory);
+
+            final var path = directory.resolve(name + StorageFileConstants.TEMPORARY_FILE_SUFFIX);
+
+            // sparse where the filesystem allows it, the chunks fill the file in place.
+            try (final var file = new RandomAccessFile(path.toFile(), "rw")) {
+                file.setLength(length);
+            }
+
+            return new FileUploadContent(
+                    FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE),
+                    path,
+                    root,
+                    length
+            );
+        } catch (final IOException e) {
+            throw this.createException(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    public OutputStream completeUploadContent(@NotNull UploadContent content, @NotNull StorageObject object) {
+        final var fileContent = this.castUploadContent(content);
+
+        try {
+            fileContent.close();
+
+            // the upload might have been written long ago, but the content is only as old as its record.
+            Files.setLastModifiedTime(fileContent.getPath(), FileTime.from(Instant.now()));
+
+            final var id = Objects.requireNonNull(object.getId());
+
+            final var root = fileContent.getRoot();
+
+            final var path = storagePathFactory.createPath(root.getPath(), id);
+
+            this.createDirectories(path.getParent(), root);
+
+            this.recordRoot(object, root);
+
+            // the upload file is renamed into place on commit just like any other staged content.
+            return new StagedFileOutputStream(
+                    OutputStream.nullOutputStream(),
+                    id,
+                    this.selectReplicas(root, id, content.getLength()),
+                    fileContent.getPath(),
+                    path,
+                    fileContent
+            );
+        } catch (final IOException e) {
+            this.discardUploadContent(content);
+
+            throw this.createException(e);
+        }
+    }
+
+    @Override
+    public void discardUploadContent(@NotNull UploadContent content) {
+        final var fileContent = this.castUploadContent(content);
+
+        try {
+            fileContent.close();
+
+            Files.deleteIfExists(fileContent.getPath());
+        } catch (final IOException e) {
+            throw this.createException(e);
+        }
+    }
+
+    @Override
+    public void publishBlob(@NotNull OutputStream out, @NotNull String digest) {
+        final var stagedOut = this.castOutputStream(out);
+
+        try {
+            stagedOut.close();
+
+            if (packFileStore.isPackable(Files.size(stagedOut.temporaryPath))) {
+                packFileStore.put(StorageFileConstants.PACKED_BLOB_KEY_PREFIX + digest, stagedOut.temporaryPath);
+
+                Files.delete(stagedOut.temporaryPath);
+
+                return;
+            }
+
+            // the blob stays on the root it was staged on, the rebalancer moves it to its owners later.
+            final var root = stagedOut.replicas.get(0);
+            final var path = storagePathFactory.createBlobPath(root.getPath(), digest);
+            final var temporaryPath = stagedOut.temporaryPath;
+
+            this.createDirectories(path.getParent(), root);
+
+            fileSynchronizer.sync(temporaryPath, () -> this.move(temporaryPath, path), path.getParent());
+
+            this.mirror(
+                    path,
+                    this.selectReplicas(root, digest, Files.size(path)),
+                    replica -> storagePathFactory.createBlobPath(replica.getPath(), digest)
+            );
+        } catch (final IOException e) {
+            this.discardOutputStream(out);
+
+            throw this.createException(e);
+        }
+    }
+
+    @Override
+    public boolean containsObject(@NotNull StorageObject object) {
+        return packFileStore.contains(this.getKey(object))
+                || this.getPaths(object).stream().anyMatch(Files::exists);
+    }
+
+    @Override
+    public void deleteObject(@NotNull StorageObject object) {
+        try {
+            if (packFileStore.delete(this.getKey(object))) {
+                return;
+            }
+
+            var deleted = false;
+
+            for (final var path : this.getPaths(object)) {
+                mappedObjectPool.invalidate(path);
+
+                deleted |= Files.deleteIfExists(path);
+            }
+
+            if (!deleted) {
+                throw new NoSuchFileException(object.getId());
+            }
+        } catch (final IOException e) {
+            throw this.createException(e);
+        }
+    }
+
+    @Override
+    public void deleteBlob(@NotNull String digest) {
+        try {
+            if (!packFileStore.delete(StorageFileConstants.PACKED_BLOB_KEY_PREFIX + digest)) {
+                for (final var root : storageRootRing.getRoots()) {
+                    final var path = storagePathFactory.createBlobPath(root.getPath(), digest);
+
+                    mappedObjectPool.invalidate(path);
+
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (final IOException e) {
+            throw this.createException(e);
+        }
+    }
+
+    @Override
+    public boolean rebalanceObject(@NotNull StorageObject object) {
+        final var id = Objects.requireNonNull(object.getId());
+
+        if (object.getBlobDigest() != null || packFileStore.contains(id)) {
+            return false;
+        }
+
+        final var replicas = storageRootRing.selectReplicas(id, object.getContentLength(), this.getTier(object));
+
+        final var paths = this.getPaths(object);
+
+        // the content keeps the form it is stored in.
+        final var compressed = paths.stream()
+                .filter(Files::exists)
+                .findFirst()
+                .map(this::isCompressed)
+                .orElse(false);
+
+        final var moved = this.rebalance(
+                paths.stream().filter(path -> this.isCompressed(path) == compressed).toList(),
+                replicas,
+                root -> this.createPath(root, id, compressed)
+        );
+
+        final var recordedRoot = storageRootRing.getRoot(object.getStorageRoot());
+
+        if (!moved && recordedRoot == replicas.get(0)) {
+            return false;
+        }
+
+        this.recordRoot(object, replicas.get(0));
+
+        return true;
+    }
+
+    @Override
+    public boolean rebalanceBlob(@NotNull String digest) {
+        if (packFileStore.contains(StorageFileConstants.PACKED_BLOB_KEY_PREFIX + digest)) {
+            return false;
+        }
+
+        final var paths = this.getBlobPaths(digest);
+
+        final long size;
+
+        try {
+            size = this.accessExisting(paths, Files::size);
+        } catch (final NoSuchFileException e) {
+            return false;
+        } catch (final IOException e) {
+            throw this.createException(e);
+        }
+
+        return this.rebalance(
+                paths,
+                storageRootRing.selectReplicas(digest, size),
+                root -> storagePathFactory.createBlobPath(root.getPath(), digest)
+        );
+    }
+
+    @Override
+    public boolean supportsTiering() {
+        return storageRootRing.isTiered();
+    }
+
+    // The content is copied (and transcoded if its form changes) to the roots of the tier before
+    // the previous copies are removed, so the readers find it in one of the candidate paths at any moment.
+    @Override
+    public boolean moveObject(@NotNull StorageObject object, @NotNull StorageTier tier, final boolean compress) {
+        final var id = Objects.requireNonNull(object.getId());
+
+        if (object.getBlobDigest() != null || packFileStore.contains(id)) {
+            return false;
+        }
+
+        // the hot objects are read often, so they are never stored compressed.
+        final var compressed = compress && tier == StorageTier.COLD;
+
+        final var replicas = storageRootRing.selectReplicas(id, object.getContentLength(), tier);
+        final var root = replicas.get(0);
+        final var path = this.createPath(root, id, compressed);
+
+        try {
+            if (!Files.exists(path)) {
+                this.accessExisting(this.getPaths(object), source -> {
+                    if (this.isCompressed(source) == compressed) {
+                        this.copy(source, root, path);
+                    } else {
+                        this.transcode(source, root, path, compressed);
+                    }
+
+                    return path;
+                });
+            }
+
+            this.mirror(path, replicas, replica -> this.createPath(replica, id, compressed));
+
+            this.deleteCopies(id, this.createPaths(replicas, id, compressed));
+
+            this.deleteFlatCopy(id);
+        } catch (final NoSuchFileException e) {
+            // the object was removed meanwhile.
+            return false;
+        } catch (final IOException e) {
+            throw this.createException(e);
+        }
+
+        this.recordRoot(object, root);
+
+        log.debug("Moved {} to the {} tier, compressed: {}", id, tier, compressed);
+
+        return true;
+    }
+
+    @Override
+    public void processIoException(@NotNull IOException e) {
+        throw this.createException(e);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // the objects move between the roots, so every one of them has to replace atomically.
+        this.atomicReplace = storageRootRing.getRoots().stream().allMatch(this::probeAtomicReplace);
+
+        for (final var root : storageRootRing.getRoots()) {
+            this.deleteAbandonedUploads(root);
+        }
+
+        if (!atomicReplace) {
+            log.warn("The storage root doesn't support atomic replacement, readers will block the overwrites.");
+        }
+    }
+
+    @Autowired
+    public void setStoragePathFactory(final StoragePathFactory storagePathFactory) {
+        this.storagePathFactory = storagePathFactory;
+    }
+
+    @Autowired
+    public void setPackFileStore(final PackFileStore packFileStore) {
+        this.packFileStore = packFileStore;
+    }
+
+    @Autowired
+    public void setMappedObjectPool(final MappedObjectPool mappedObjectPool) {
+        this.mappedObjectPool = mappedObjectPool;
+    }
+
+    @Autowired
+    public void setFileSynchronizer(final FileSynchronizer fileSynchronizer) {
+        this.fileSynchronizer = fileSynchronizer;
+    }
+
+    @Autowired
+    public void setStorageRootRing(final StorageRootRing storageRootRing) {
+        this.storageRootRing = storageRootRing;
+    }
+
+    private String getKey(final StorageObject object) {
+        final var blobDigest = object.getBlobDigest();
+
+        return blobDigest != null
+                ? StorageFileConstants.PACKED_BLOB_KEY_PREFIX + blobDigest
+                : Objects.requireNonNull(object.getId());
+    }
+
+    // The recorded root comes first and the other roots follow in the ring order, so an object
+    // that was moved by the rebalancer after its record was read is still found.
+    private List<Path> getPaths(final StorageObject object) {
+        final var blobDigest = object.getBlobDigest();
+
+        if (blobDigest != null) {
+            return this.getBlobPaths(blobDigest);
+        }
+
+        final var id = Objects.requireNonNull(object.getId());
+
+        final var paths = new ArrayList<Path>();
+
+        final var recordedRoot = storageRootRing.getRoot(object.getStorageRoot());
+
+        if (recordedRoot != null) {
+            this.addPaths(paths, recordedRoot, id);
+        }
+
+        // the recorded root might have been removed from the configuration.
+        if (storageRootRing.isStriped() || recordedRoot == null) {
+            for (final var root : storageRootRing.locate(id, this.getTier(object))) {
+                if (root != recordedRoot) {
+                    this.addPaths(paths, root, id);
+                }
+            }
+        }
+
+        // the object may not be migrated to the sharded layout yet.
+        if (storagePathFactory.isSharded()) {
+            paths.add(storagePathFactory.createFlatPath(storageRootRing.getPrimary().getPath(), id));
+        }
+
+        return paths;
+    }
+
+    // the compressed content may only be found on the cold roots.
+    private void addPaths(final List<Path> paths, final StorageRoot root, final String id) {
+        if (root.getTier() == StorageTier.COLD) {
+            paths.add(this.createPath(root, id, true));
+        }
+
+        paths.add(this.createPath(root, id, false));
+    }
+
+    private Path createPath(final StorageRoot root, final String id, final boolean compressed) {
+        final var path = storagePathFactory.createPath(root.getPath(), id);
+
+        return compressed
+                ? path.resolveSibling(path.getFileName() + StorageFileConstants.COMPRESSED_FILE_SUFFIX)
+                : path;
+    }
+
+    private Set<Path> createPaths(final List<StorageRoot> roots, final String id, final boolean compressed) {
+        return roots.stream()
+                .map(root -> this.createPath(root, id, compressed))
+                .collect(Collectors.toSet());
+    }
+
+    private boolean isCompressed(final Path path) {
+        return path.getFileName().toString().endsWith(StorageFileConstants.COMPRESSED_FILE_SUFFIX);
+    }
+
+    private StorageTier getTier(final StorageObject object) {
+        final var tier = object.getTier();
+
+        return tier != null ? tier : StorageTier.HOT;
+    }
+
+    private List<Path> getBlobPaths(final String digest) {
+        return storageRootRing.locate(digest).stream()
+                .map(root -> storagePathFactory.createBlobPath(root.getPath(), digest))
+                .toList();
+    }
+
+    private <T> T accessExisting(final List<Path> paths, final PathOperation<T> operation) throws IOException {
+        NoSuchFileException missing = null;
+
+        for (final var path : paths) {
+            try {
+                return operation.perform(path);
+            } catch (final NoSuchFileException e) {
+                missing = e;
+            }
+        }
+
+        if (paths.size() == 1) {
+            throw Objects.requireNonNull(missing);
+        }
+
+        // since the migration and the rebalancer move files atomically,
+        // the last attempt succeeds if the content was moved meanwhile.
+        return operation.perform(paths.get(0));
+    }
+
+    // The expected replicas are tried starting with the least busy healthy one, the other candidates follow
+    // in their order. A replica that fails with anything but a missing file is avoided by the next reads for a while.
+    private ObjectHandle openReplica(final List<Path> paths, final StorageTier tier) throws IOException {
+        // the cold objects are rarely read and may come in both forms, so they are not balanced.
+        final var candidates = tier == StorageTier.HOT ? this.orderByLoad(paths) : paths;
+
+        IOException failure = null;
+
+        for (final var path : candidates) {
+            final var root = storageRootRing.findRoot(path);
+
+            final var start = System.nanoTime();
+
+            try {
+                final var handle = this.openFile(path);
+
+                if (root == null) {
+                    return handle;
+                }
+
+                root.recordOpenLatency(System.nanoTime() - start);
+
+                return new TrackedObjectHandle(handle, root);
+            } catch (final NoSuchFileException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            } catch (final IOException e) {
+                log.warn("Failed to open {}, trying the next replica: {}", path, e.getMessage());
+
+                if (root != null) {
+                    root.markFailed();
+                }
+
+                failure = e;
+            }
+        }
+
+        if (!(failure instanceof NoSuchFileException) || paths.size() == 1) {
+            throw Objects.requireNonNull(failure);
+        }
+
+        // since the migration and the rebalancer move files atomically,
+        // the last attempt succeeds if the content was moved meanwhile.
+        return this.openFile(paths.get(0));
+    }
+
+    // The candidates don't tell where the replicas are (the recorded root comes first, the content
+    // might be on the ring owners or not rebalanced yet), so the copies that exist are balanced.
+    private List<Path> orderByLoad(final List<Path> paths) {
+        if (storageRootRing.getReplicaCount() < 2 || paths.size() < 2) {
+            return paths;
+        }
+
+        final var ordered = new ArrayList<Path>(paths.size());
+        final var missing = new ArrayList<Path>();
+
+        for (final var path : paths) {
+            (Files.exists(path) ? ordered : missing).add(path);
+        }
+
+        ordered.sort(Comparator.comparing(storageRootRing::findRoot, Comparator.nullsLast(LOAD_ORDER)));
+
+        ordered.addAll(missing);
+
+        return ordered;
+    }
+
+    // the published content is copied to the other replicas. A replica that can't take the copy
+    // must not keep serving the previous content, the rebalancer restores it on the next startup.
+    private void mirror(final Path source, final List<StorageRoot> replicas, final Function<StorageRoot, Path> pathFactory) {
+        for (final var replica : replicas) {
+            final var path = pathFactory.apply(replica);
+
+            if (path.equals(source)) {
+                continue;
+            }
+
+            try {
+                this.copy(source, replica, path);
+            } catch (final IOException e) {
+                log.warn("Failed to mirror {} to {}: {}", source, replica.getName(), e.getMessage());
+
+                replica.markFailed();
+
+                try {
+                    mappedObjectPool.invalidate(path);
+
+                    Files.deleteIfExists(path);
+                } catch (final IOException ignored) {
+                    // the root is unusable, its copy is unreachable as well.
+                }
+            }
+        }
+    }
+
+    // The missing replicas are copied before the surplus copies are removed,
+    // so at least one of the candidate paths holds the content at any moment.
+    private boolean rebalance(
+            final List<Path> paths,
+            final List<StorageRoot> replicas,
+            final Function<StorageRoot, Path> pathFactory
+    ) {
+        var changed = false;
+
+        try {
+            for (final var replica : replicas) {
+                final var path = pathFactory.apply(replica);
+
+                if (Files.exists(path)) {
+                    continue;
+                }
+
+                this.accessExisting(paths, source -> {
+                    this.copy(source, replica, path);
+                    return path;
+                });
+
+                log.debug("Copied {} to {}", path.getFileName(), replica.getName());
+
+                changed = true;
+            }
+
+            for (final var root : storageRootRing.getRoots()) {
+                if (replicas.contains(root)) {
+                    continue;
+                }
+
+                final var path = pathFactory.apply(root);
+
+                mappedObjectPool.invalidate(path);
+
+                changed |= Files.deleteIfExists(path);
+            }
+        } catch (final NoSuchFileException e) {
+            // the content was removed meanwhile.
+            return changed;
+        } catch (final IOException e) {
+            throw this.createException(e);
+        }
+
+        return changed;
+    }
+
+    private void copy(final Path source, final StorageRoot root, final Path path) throws IOException {
+        this.createDirectories(path.getParent(), root);
+
+        final var temporaryPath = this.createTemporaryPath(path);
+
+        try {
+            Files.copy(source, temporaryPath);
+
+            fileSynchronizer.sync(temporaryPath, () -> this.move(temporaryPath, path), path.getParent());
+        } catch (final IOException e) {
+            Files.deleteIfExists(temporaryPath);
+
+            throw e;
+        }
+    }
+
+    // the compressed form is the original size followed by the gzip stream, see CompressedObjectHandle.
+    private void transcode(final Path source, final StorageRoot root, final Path path, final boolean compress) throws IOException {
+        this.createDirectories(path.getParent(), root);
+
+        final var temporaryPath = this.createTemporaryPath(path);
+
+        try {
+            try (
+                    final var handle = this.openFile(source);
+                    final var in = handle.createInputStream();
+                    final var out = new BufferedOutputStream(Files.newOutputStream(temporaryPath), TRANSCODE_BUFFER_SIZE)
+            ) {
+                if (compress) {
+                    out.write(ByteBuffer.allocate(CompressedObjectHandle.HEADER_SIZE).putLong(handle.getSize()).array());
+
+                    final var compressedOut = new GZIPOutputStream(out, TRANSCODE_BUFFER_SIZE);
+
+                    in.transferTo(compressedOut);
+
+                    compressedOut.finish();
+                } else {
+                    in.transferTo(out);
+                }
+            }
+
+            fileSynchronizer.sync(temporaryPath, () -> this.move(temporaryPath, path), path.getParent());
+        } catch (final IOException e) {
+            Files.deleteIfExists(temporaryPath);
+
+            throw e;
+        }
+    }
+
+    private Path createTemporaryPath(final Path path) {
+        return path.resolveSibling(
+                StorageFileConstants.TEMPORARY_FILE_PREFIX + path.getFileName() + "." + UUID.randomUUID()
+                        + StorageFileConstants.TEMPORARY_FILE_SUFFIX
+        );
+    }
+
+    // the content stays where it was written and the rest of the replicas follow along the ring.
+    private List<StorageRoot> selectReplicas(final StorageRoot root, final String key, final long size) {
+        final var replicas = new ArrayList<StorageRoot>();
+
+        replicas.add(root);
+
+        for (final var replica : storageRootRing.selectReplicas(key, size)) {
+            if (replicas.size() < storageRootRing.getReplicaCount() && replica != root) {
+                replicas.add(replica);
+            }
+        }
+
+        return replicas;
+    }
+
+    // removes the object's files in both forms from every root except the kept ones.
+    private void deleteCopies(final String id, final Set<Path> keptPaths) throws IOException {
+        for (final var root : storageRootRing.getRoots()) {
+            final var paths = new ArrayList<Path>(2);
+
+            this.addPaths(paths, root, id);
+
+            for (final var path : paths) {
+                if (keptPaths.contains(path)) {
+                    continue;
+                }
+
+                mappedObjectPool.invalidate(path);
+
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    // the object might still have an unmigrated copy in the flat layout.
+    private void deleteFlatCopy(final String id) throws IOException {
+        if (storagePathFactory.isSharded()) {
+            final var flatPath = storagePathFactory.createFlatPath(storageRootRing.getPrimary().getPath(), id);
+
+            mappedObjectPool.invalidate(flatPath);
+
+            Files.deleteIfExists(flatPath);
+        }
+    }
+
+    // the primary root is implied, so the records don't change when the striping is not configured.
+    private void recordRoot(final StorageObject object, final StorageRoot root) {
+        object.setStorageRoot(root == storageRootRing.getPrimary() ? null : root.getName());
+        object.setTier(root.getTier());
+    }
+
+    // the objects that are large enough and read through the streams (ranges, decryption, decompression)
+    // are served from the pooled mappings, so the reads don't cost a syscall per buffer.
+    private ObjectHandle openFile(final Path path) throws IOException {
+        final var compressed = this.isCompressed(path);
+
+        // the pooled mapping is matched against the file it was created for.
+        final var attributes = compressed ? null : Files.readAttributes(path, BasicFileAttributes.class);
+
+        final var channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            if (compressed) {
+                return new CompressedObjectHandle(channel);
+            }
+
+            if (mappedObjectPool.isMappable(channel.size())) {
+                final var mappedHandle = mappedObjectPool.open(path, Objects.requireNonNull(attributes), channel);
+
+                if (mappedHandle != null) {
+                    return mappedHandle;
+                }
+            }
+
+            return new FileObjectHandle(channel);
+        } catch (final IOException | RuntimeException e) {
+            IOUtils.closeQuietly(channel);
+
+            throw e;
+        }
+    }
+
+    private void createDirectories(final Path directory, final StorageRoot root) throws IOException {
+        if (Files.isDirectory(directory)) {
+            return;
+        }
+
+        Files.createDirectories(directory);
+
+        // the new shard directories have to be durable too, otherwise the synced files could vanish with them.
+        if (fileSynchronizer.isEnabled()) {
+            for (var current = directory; !current.equals(root.getPath()); current = current.getParent()) {
+                fileSynchronizer.syncDirectory(current.getParent());
+            }
+        }
+    }
+
+    // every published file goes through here, so a mapping of the content it replaced is never served again.
+    private void move(final Path source, final Path target) throws IOException {
+        if (atomicReplace) {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        mappedObjectPool.invalidate(target);
+    }
+
+    // Some filesystems (network mounts, Windows) can't rename over an existing file atomically,
+    // so the behaviour is checked once on a pair of scratch files.
+    private boolean probeAtomicReplace(final StorageRoot root) {
+        final var source = root.getPath().resolve(this.createScratchFileName());
+        final var target = root.getPath().resolve(this.createScratchFileName());
+
+        try {
+            Files.createFile(source);
+            Files.createFile(target);
+
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+
+            return true;
+        } catch (final AtomicMoveNotSupportedException e) {
+            return false;
+        } catch (final IOException e) {
+            log.warn("Failed to check the atomic replacement support: {}", e.getMessage());
+
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(source);
+                Files.deleteIfExists(target);
+            } catch (final IOException e) {
+                log.warn("Failed to clean up after the atomic replacement check: {}", e.getMessage());
+            }
+        }
+    }
+
+    private String createScratchFileName() {
+        return StorageFileConstants.TEMPORARY_FILE_PREFIX + UUID.randomUUID() + StorageFileConstants.TEMPORARY_FILE_SUFFIX;
+    }
+
+    // the upload sessions don't survive a restart, so their files are of no use anymore.
+    private void deleteAbandonedUploads(final StorageRoot root) {
+        final var directory = root.getPath().resolve(UPLOAD_DIRECTORY);
+
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        try (final var entries = Files.newDirectoryStream(directory)) {
+            for (final var entry : entries) {
+                Files.deleteIfExists(entry);
+            }
+        } catch (final IOException e) {
+            log.warn("Failed to delete the abandoned uploads: {}", e.getMessage());
+        }
+    }
+
+    private FileUploadContent castUploadContent(final UploadContent content) {
+        if (content instanceof FileUploadContent fileContent) {
+            return fileContent;
+        }
+
+        throw new IllegalArgumentException("The upload content was not created by this accessor.");
+    }
+
+    private StagedFileOutputStream castOutputStream(final OutputStream out) {
+        if (out instanceof StagedFileOutputStream stagedOut) {
+            return stagedOut;
+        }
+
+        throw new IllegalArgumentException("The output stream was not created by this accessor.");
+    }
+
+    private StorageObjectAccessException createException(final IOException e) {
+        log.warn("Failed to access the stored content", e);
+
+        return new StorageObjectAccessException();
+    }
+
+    @FunctionalInterface
+    private interface PathOperation<T> {
+
+        T perform(Path path) throws IOException;
+    }
+
+    private static final class StagedFileOutputStream extends FilterOutputStream {
+
+        private final String id;
+
+        // the content is staged on the first replica.
+        private final List<StorageRoot> replicas;
+
+        private final Path temporaryPath;
+
+        private final Path path;
+
+        // set if the upload file itself is renamed into place.
+        @Nullable
+        private final FileUploadContent upload;
+
+        private boolean closed;
+
+        private StagedFileOutputStream(
+                final OutputStream out,
+                final String id,
+                final List<StorageRoot> replicas,
+                final Path temporaryPath,
+                final Path path,
+                @Nullable final FileUploadContent upload
+        ) {
+            super(out);
+            this.id = id;
+            this.replicas = replicas;
+            this.temporaryPath = temporaryPath;
+            this.path = path;
+            this.upload = upload;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                out.close();
+            }
+        }
+    }
+}
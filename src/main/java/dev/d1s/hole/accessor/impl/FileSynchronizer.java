@@ -0,0 +1,346 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor.impl;
+
+import dev.d1s.hole.accessor.DurabilityMode;
+import dev.d1s.hole.constant.properties.ConfigurationPropertiesPrefixConstants;
+import dev.d1s.hole.constant.storage.StorageBackendConstants;
+import dev.d1s.hole.properties.StorageConfigurationProperties;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Makes the written files durable according to the configured mode. A sync consists of forcing
+// the file, publishing it (usually a rename) and forcing the directory holding the new entry.
+// In the group commit mode the syncs are handed to a single flusher thread, which collects
+// the requests arriving within the window, forces every file and publishes it,
+// and then forces every affected directory once.
+@Component
+@ConditionalOnProperty(
+        prefix = ConfigurationPropertiesPrefixConstants.STORAGE,
+        name = StorageBackendConstants.BACKEND_PROPERTY,
+        havingValue = StorageBackendConstants.FILESYSTEM_BACKEND,
+        matchIfMissing = true
+)
+public class FileSynchronizer implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LogManager.getLogger();
+
+    private final BlockingQueue<SyncRequest> queue = new LinkedBlockingQueue<>();
+
+    private StorageConfigurationProperties properties;
+
+    private Thread flusher;
+
+    private volatile boolean running;
+
+    public boolean isEnabled() {
+        return properties.getDurability() != DurabilityMode.NONE;
+    }
+
+    public void sync(@NotNull final Path file, @Nullable final FileAction publish, @Nullable final Path directory)
+            throws IOException {
+        this.sync(new SyncRequest(null, file, publish, directory));
+    }
+
+    public void sync(@NotNull final FileChannel channel) throws IOException {
+        this.sync(new SyncRequest(channel, null, null, null));
+    }
+
+    public void syncDirectory(@NotNull final Path directory) throws IOException {
+        if (this.isEnabled()) {
+            try (final var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            }
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (properties.getDurability() != DurabilityMode.GROUP_COMMIT) {
+            return;
+        }
+
+        running = true;
+
+        flusher = new Thread(this::runFlusher, "hole-group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+
+        running = false;
+
+        flusher.interrupt();
+        flusher.join();
+
+        final var pending = new ArrayList<SyncRequest>();
+
+        queue.drainTo(pending);
+
+        pending.forEach(request -> request.future.completeExceptionally(
+                new IOException("The storage is shutting down.")
+        ));
+    }
+
+    @Autowired
+    public void setProperties(final StorageConfigurationProperties properties) {
+        this.properties = properties;
+    }
+
+    private void sync(final SyncRequest request) throws IOException {
+        switch (properties.getDurability()) {
+            case NONE -> this.publish(request);
+            case FSYNC -> {
+                this.force(request);
+                this.publish(request);
+
+                if (request.directory != null) {
+                    this.syncDirectory(request.directory);
+                }
+            }
+            case GROUP_COMMIT -> this.awaitGroupCommit(request);
+        }
+    }
+
+    private void awaitGroupCommit(final SyncRequest request) throws IOException {
+        if (!running) {
+            throw new IOException("The storage is shutting down.");
+        }
+
+        queue.add(request);
+
+        // the flusher might have been stopped right before the request was queued.
+        if (!running && queue.remove(request)) {
+            throw new IOException("The storage is shutting down.");
+        }
+
+        try {
+            request.future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IOException("Interrupted while waiting for the group commit.", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // If the flusher ever stops, the pending and the new requests fail instead of waiting for it forever.
+    private void runFlusher() {
+        final var batch = new ArrayList<SyncRequest>();
+
+        try {
+            this.flush(batch);
+        } finally {
+            running = false;
+
+            final var failure = new IOException("The group commit has stopped.");
+
+            queue.drainTo(batch);
+
+            batch.forEach(request -> request.future.completeExceptionally(failure));
+        }
+    }
+
+    private void flush(final List<SyncRequest> batch) {
+        final var window = properties.getGroupCommitWindow().toNanos();
+        final var maxBatchSize = properties.getGroupCommitMaxBatchSize();
+
+        while (running) {
+            try {
+                batch.add(queue.take());
+
+                // the first request opens the window, the ones arriving until it closes join the batch.
+                final var deadline = System.nanoTime() + window;
+
+                while (batch.size() < maxBatchSize) {
+                    final var remaining = deadline - System.nanoTime();
+
+                    if (remaining <= 0L) {
+                        break;
+                    }
+
+                    final var request = queue.poll(remaining, TimeUnit.NANOSECONDS);
+
+                    if (request == null) {
+                        break;
+                    }
+
+                    batch.add(request);
+                }
+
+                queue.drainTo(batch, maxBatchSize - batch.size());
+            } catch (final InterruptedException e) {
+                if (!running) {
+                    batch.forEach(request -> request.future.completeExceptionally(
+                            new IOException("The storage is shutting down.")
+                    ));
+
+                    batch.clear();
+
+                    return;
+                }
+            }
+
+            try {
+                this.commitBatch(batch);
+            } catch (final RuntimeException e) {
+                log.error("The group commit failed", e);
+
+                batch.forEach(request -> request.future.completeExceptionally(e));
+            }
+
+            batch.clear();
+        }
+    }
+
+    private void commitBatch(final List<SyncRequest> batch) {
+        final var forcedChannels = new IdentityHashMap<FileChannel, IOException>();
+        final var directories = new HashMap<Path, List<SyncRequest>>();
+
+        for (final var request : batch) {
+            try {
+                if (request.channel != null) {
+                    // the pack segments are shared, so one force covers all of their appends.
+                    if (forcedChannels.containsKey(request.channel)) {
+                        final var failure = forcedChannels.get(request.channel);
+
+                        if (failure != null) {
+                            throw failure;
+                        }
+                    } else {
+                        try {
+                            request.channel.force(false);
+
+                            forcedChannels.put(request.channel, null);
+                        } catch (final IOException e) {
+                            forcedChannels.put(request.channel, e);
+
+                            throw e;
+                        }
+                    }
+                } else {
+                    this.force(request);
+                }
+
+                this.publish(request);
+            } catch (final IOException | RuntimeException e) {
+                request.future.completeExceptionally(e);
+
+                continue;
+            }
+
+            if (request.directory != null) {
+                directories.computeIfAbsent(request.directory, it -> new ArrayList<>()).add(request);
+            } else {
+                request.future.complete(null);
+            }
+        }
+
+        directories.forEach((directory, requests) -> {
+            try {
+                this.syncDirectory(directory);
+
+                requests.forEach(request -> request.future.complete(null));
+            } catch (final IOException | RuntimeException e) {
+                requests.forEach(request -> request.future.completeExceptionally(e));
+            }
+        });
+
+        log.trace("Group commit: {} requests, {} directories", batch.size(), directories.size());
+    }
+
+    private void force(final SyncRequest request) throws IOException {
+        if (request.channel != null) {
+            request.channel.force(false);
+
+            return;
+        }
+
+        // fsync applies to the file rather than to the descriptor, so a fresh one will do.
+        try (final var channel = FileChannel.open(request.file, StandardOpenOption.WRITE)) {
+            channel.force(false);
+        }
+    }
+
+    private void publish(final SyncRequest request) throws IOException {
+        if (request.publish != null) {
+            request.publish.perform();
+        }
+    }
+
+    @FunctionalInterface
+    public interface FileAction {
+
+        void perform() throws IOException;
+    }
+
+    private static final class SyncRequest {
+
+        private final FileChannel channel;
+
+        private final Path file;
+
+        private final FileAction publish;
+
+        private final Path directory;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private SyncRequest(
+                final FileChannel channel,
+                final Path file,
+                final FileAction publish,
+                final Path directory
+        ) {
+            this.channel = channel;
+            this.file = file;
+            this.publish = publish;
+            this.directory = directory;
+        }
+    }
+}
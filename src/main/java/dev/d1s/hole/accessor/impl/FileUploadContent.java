@@ -0,0 +1,114 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor.impl;
+
+import dev.d1s.hole.accessor.UploadContent;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public final class FileUploadContent implements UploadContent {
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private volatile FileChannel channel;
+
+    private final Path path;
+
+    private final StorageRoot root;
+
+    private final long length;
+
+    public FileUploadContent(
+            @NotNull final FileChannel channel,
+            @NotNull final Path path,
+            @NotNull final StorageRoot root,
+            final long length
+    ) {
+        this.channel = channel;
+        this.path = path;
+        this.root = root;
+        this.length = length;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    // positional writes don't move the channel position, so the chunks may be written concurrently.
+    @Override
+    public void write(final long position, @NotNull final InputStream in, final long length) throws IOException {
+        final var buffer = new byte[(int) Math.min(WRITE_BUFFER_SIZE, length)];
+
+        var written = 0L;
+
+        while (written < length) {
+            final var read = in.read(buffer, 0, (int) Math.min(buffer.length, length - written));
+
+            if (read == -1) {
+                throw new EOFException("The chunk ended after " + written + " of " + length + " bytes.");
+            }
+
+            final var source = ByteBuffer.wrap(buffer, 0, read);
+
+            while (source.hasRemaining()) {
+                channel.write(source, position + written + source.position());
+            }
+
+            written += read;
+        }
+    }
+
+    @NotNull
+    @Override
+    public InputStream createInputStream(final long position, final long length) {
+        return new PositionalInputStream(channel, position, Math.min(position + length, this.length));
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return channel.isOpen();
+    }
+
+    @NotNull
+    Path getPath() {
+        return path;
+    }
+
+    @NotNull
+    StorageRoot getRoot() {
+        return root;
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    // the content is handed back to the upload if its commit failed before the file was moved into place.
+    synchronized void reopen() throws IOException {
+        if (!channel.isOpen()) {
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+}
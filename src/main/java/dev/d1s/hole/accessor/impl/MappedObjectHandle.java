@@ -0,0 +1,90 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor.impl;
+
+import dev.d1s.hole.accessor.ObjectHandle;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Serves the streams from a pooled mapping, while the channel is kept for the whole transfers,
+// since sendfile still beats copying from the mapped memory.
+public final class MappedObjectHandle implements ObjectHandle {
+
+    private final FileChannel channel;
+
+    private final ByteBuffer mapping;
+
+    private final Runnable release;
+
+    private boolean closed;
+
+    public MappedObjectHandle(
+            @NotNull final FileChannel channel,
+            @NotNull final ByteBuffer mapping,
+            @NotNull final Runnable release
+    ) {
+        this.channel = channel;
+        this.mapping = mapping;
+        this.release = release;
+    }
+
+    @Override
+    public long getSize() {
+        return mapping.capacity();
+    }
+
+    @NotNull
+    @Override
+    public InputStream createInputStream() {
+        return this.createInputStream(0L, mapping.capacity());
+    }
+
+    @NotNull
+    @Override
+    public InputStream createInputStream(final long position, final long length) {
+        final var start = (int) Math.min(position, mapping.capacity());
+        final var end = (int) Math.min(start + length, mapping.capacity());
+
+        return new ByteBufferInputStream(mapping.duplicate().position(start).limit(end));
+    }
+
+    @Nullable
+    @Override
+    public FileChannel getFileChannel() {
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            channel.close();
+        } finally {
+            release.run();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor.impl;
+
+import dev.d1s.hole.constant.properties.ConfigurationPropertiesPrefixConstants;
+import dev.d1s.hole.constant.storage.StorageBackendConstants;
+import dev.d1s.hole.properties.StorageConfigurationProperties;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+
+// A bounded pool of read-only mappings keyed by the file path. A mapping is only reused for the same file,
+// told by its key (the inode where there's one), modification time and size. The pool holds one reference
+// to every pooled mapping and every open handle holds another one. A mapping is unmapped only
+// once it is both out of the pool (evicted, overwritten or deleted) and released by the last reader,
+// since touching an unmapped buffer crashes the JVM. The mapped bytes of the evicted mappings
+// still in use are accounted for until they are released.
+@Component
+@ConditionalOnProperty(
+        prefix = ConfigurationPropertiesPrefixConstants.STORAGE,
+        name = StorageBackendConstants.BACKEND_PROPERTY,
+        havingValue = StorageBackendConstants.FILESYSTEM_BACKEND,
+        matchIfMissing = true
+)
+public class MappedObjectPool {
+
+    private static final Logger log = LogManager.getLogger();
+
+    // there's no public unmapping API before the foreign memory one, so the cleaner is invoked
+    // through Unsafe. If that's not available, the mappings are left to the garbage collector.
+    private static final MethodHandle INVOKE_CLEANER = MappedObjectPool.lookupCleaner();
+
+    // access ordered, so the iteration starts with the least recently used mapping.
+    private final LinkedHashMap<Path, Mapping> mappings = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long mappedBytes;
+
+    private StorageConfigurationProperties properties;
+
+    public boolean isMappable(final long size) {
+        return properties.getMappingPoolSize().toBytes() > 0L
+                && size >= properties.getMappingMinObjectSize().toBytes()
+                && size <= Math.min(properties.getMappingMaxObjectSize().toBytes(), Integer.MAX_VALUE);
+    }
+
+    // The attributes must be read before the channel is opened. If the file is replaced in between,
+    // the mapping of the new content is recorded with the old identity and is never reused.
+    @Nullable
+    public MappedObjectHandle open(
+            @NotNull final Path path,
+            @NotNull final BasicFileAttributes attributes,
+            @NotNull final FileChannel channel
+    ) throws IOException {
+        final var size = channel.size();
+
+        if (size != attributes.size()) {
+            return null;
+        }
+
+        final var identity = new FileIdentity(attributes.fileKey(), attributes.lastModifiedTime(), size);
+
+        synchronized (this) {
+            final var mapping = mappings.get(path);
+
+            if (mapping != null) {
+                if (mapping.identity.equals(identity)) {
+                    mapping.references++;
+
+                    return this.createHandle(channel, mapping);
+                }
+
+                this.evict(path);
+            }
+
+            if (!this.reserve(size)) {
+                return null;
+            }
+        }
+
+        final MappedByteBuffer buffer;
+
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+        } catch (final IOException e) {
+            synchronized (this) {
+                mappedBytes -= size;
+            }
+
+            throw e;
+        }
+
+        synchronized (this) {
+            final var mapping = new Mapping(buffer, identity);
+
+            // one reference for the pool and one for the caller.
+            mapping.references = 2;
+
+            final var previous = mappings.put(path, mapping);
+
+            if (previous != null) {
+                this.release(previous);
+            }
+
+            return this.createHandle(channel, mapping);
+        }
+    }
+
+    public synchronized void invalidate(@NotNull final Path path) {
+        this.evict(path);
+    }
+
+    @Autowired
+    public void setProperties(final StorageConfigurationProperties properties) {
+        this.properties = properties;
+    }
+
+    private MappedObjectHandle createHandle(final FileChannel channel, final Mapping mapping) {
+        return new MappedObjectHandle(channel, mapping.buffer, () -> {
+            synchronized (this) {
+                this.release(mapping);
+            }
+        });
+    }
+
+    private boolean reserve(final long size) {
+        final var poolSize = properties.getMappingPoolSize().toBytes();
+
+        final var iterator = mappings.entrySet().iterator();
+
+        while (mappedBytes + size > poolSize && iterator.hasNext()) {
+            final var mapping = iterator.next().getValue();
+
+            iterator.remove();
+
+            this.release(mapping);
+        }
+
+        if (mappedBytes + size > poolSize) {
+            return false;
+        }
+
+        mappedBytes += size;
+
+        return true;
+    }
+
+    private void evict(final Path path) {
+        final var mapping = mappings.remove(path);
+
+        if (mapping != null) {
+            this.release(mapping);
+        }
+    }
+
+    private void release(final Mapping mapping) {
+        if (--mapping.references > 0) {
+            return;
+        }
+
+        mappedBytes -= mapping.buffer.capacity();
+
+        if (INVOKE_CLEANER != null) {
+            try {
+                INVOKE_CLEANER.invokeExact((ByteBuffer) mapping.buffer);
+            } catch (final Throwable e) {
+                log.warn("Failed to unmap a buffer: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static MethodHandle lookupCleaner() {
+        try {
+            final var unsafeClass = Class.forName("sun.misc.Unsafe");
+            final var unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+
+            unsafeField.setAccessible(true);
+
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(unsafeField.get(null));
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            log.warn("Unmapping is not available, the mappings are released by the garbage collector: {}",
+                    e.getMessage());
+
+            return null;
+        }
+    }
+
+    private record FileIdentity(@Nullable Object fileKey, @NotNull FileTime lastModifiedTime, long size) {
+    }
+
+    private static final class Mapping {
+
+        private final MappedByteBuffer buffer;
+
+        private final FileIdentity identity;
+
+        private int references;
+
+        private Mapping(final MappedByteBuffer buffer, final FileIdentity identity) {
+            this.buffer = buffer;
+            this.identity = identity;
+        }
+    }
+}
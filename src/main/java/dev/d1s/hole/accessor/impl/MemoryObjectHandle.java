@@ -0,0 +1,65 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor.impl;
+
+import dev.d1s.hole.accessor.ObjectHandle;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public final class MemoryObjectHandle implements ObjectHandle {
+
+    private final ByteBuffer buffer;
+
+    public MemoryObjectHandle(@NotNull final ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public long getSize() {
+        return buffer.remaining();
+    }
+
+    @NotNull
+    @Override
+    public InputStream createInputStream() {
+        return this.createInputStream(0L, buffer.remaining());
+    }
+
+    @NotNull
+    @Override
+    public InputStream createInputStream(final long position, final long length) {
+        final var start = (int) Math.min(position, buffer.remaining());
+        final var end = (int) Math.min(start + length, buffer.remaining());
+
+        return new ByteBufferInputStream(buffer.duplicate().position(start).limit(end));
+    }
+
+    @Nullable
+    @Override
+    public FileChannel getFileChannel() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+        // the buffer is owned by the accessor.
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor.impl;
+
+import dev.d1s.hole.accessor.ObjectHandle;
+import dev.d1s.hole.accessor.ObjectStorageAccessor;
+import dev.d1s.hole.accessor.UploadContent;
+import dev.d1s.hole.constant.properties.ConfigurationPropertiesPrefixConstants;
+import dev.d1s.hole.constant.storage.StorageBackendConstants;
+import dev.d1s.hole.entity.storageObject.StorageObject;
+import dev.d1s.hole.entity.storageObject.StorageTier;
+import dev.d1s.hole.exception.storage.StorageObjectAccessException;
+import dev.d1s.hole.properties.StorageConfigurationProperties;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Keeps the content in the heap or in direct buffers, nothing survives a restart.
+// Meant for ephemeral caches and benchmarks, objects are limited to 2 GiB.
+@Component
+@ConditionalOnProperty(
+        prefix = ConfigurationPropertiesPrefixConstants.STORAGE,
+        name = StorageBackendConstants.BACKEND_PROPERTY,
+        havingValue = StorageBackendConstants.MEMORY_BACKEND
+)
+public class MemoryObjectStorageAccessor implements ObjectStorageAccessor {
+
+    private static final Logger log = LogManager.getLogger();
+
+    private final Map<String, ByteBuffer> objects = new ConcurrentHashMap<>();
+
+    private final Map<String, ByteBuffer> blobs = new ConcurrentHashMap<>();
+
+    private StorageConfigurationProperties properties;
+
+    @Override
+    public boolean supportsRange() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsZeroCopy() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsAtomicReplace() {
+        return true;
+    }
+
+    @NotNull
+    @Override
+    public ObjectHandle openObject(@NotNull StorageObject object) {
+        final var blobDigest = object.getBlobDigest();
+
+        final var buffer = blobDigest != null
+                ? blobs.get(blobDigest)
+                : objects.get(Objects.requireNonNull(object.getId()));
+
+        if (buffer == null) {
+            log.warn("No content stored for {}", object.getId());
+
+            throw new StorageObjectAccessException();
+        }
+
+        return new MemoryObjectHandle(buffer);
+    }
+
+    @NotNull
+    @Override
+    public List<ObjectHandle> openCopies(@NotNull StorageObject object) {
+        return List.of(this.openObject(object));
+    }
+
+    @Override
+    public void closeObject(@NotNull ObjectHandle handle) {
+        try {
+            handle.close();
+        } catch (final IOException e) {
+            throw this.createException(e);
+        }
+    }
+
+    @Override
+    public void closeInputStream(@NotNull InputStream in) {
+        try {
+            in.close();
+        } catch (final IOException e) {
+            throw this.createException(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    public OutputStream createOutputStream(@NotNull StorageObject object) {
+        return new StagedMemoryOutputStream(Objects.requireNonNull(object.getId()));
+    }
+
+    @Override
+    public void closeOutputStream(@NotNull OutputStream out) {
+        // the staged bytes stay until the content is committed or discarded,
+        // but the wrapping streams have to write out what they hold.
+        try {
+            out.close();
+        } catch (final IOException e) {
+            throw this.createException(e);
+        }
+    }
+
+    // the map entry is replaced in one step, so readers see either the old or the new buffer.
+    @Override
+    public void commitOutputStream(@NotNull OutputStream out) {
+        final var stagedOut = this.castOutputStream(out);
+
+        objects.put(stagedOut.id, this.toBuffer(stagedOut));
+
+        if (stagedOut.upload != null) {
+            stagedOut.upload.consume();
+        }
+    }
+
+    @Override
+    public void discardOutputStream(@NotNull OutputStream out) {
+        this.castOutputStream(out).reset();
+    }
+
+    @NotNull
+    @Override
+    public UploadContent createUploadContent(final long length) {
+        // the byte arrays are limited to 2 GiB.
+        if (length > Integer.MAX_VALUE - 8) {
+            log.warn("The upload of {} bytes doesn't fit into memory", length);
+
+            throw new StorageObjectAccessException();
+        }
+
+        return new MemoryUploadContent((int) length);
+    }
+
+    @NotNull
+    @Override
+    public OutputStream completeUploadContent(@NotNull UploadContent content, @NotNull StorageObject object) {
+        return new StagedMemoryOutputStream(
+                Objects.requireNonNull(object.getId()),
+                this.castUploadContent(content)
+        );
+    }
+
+    @Override
+    public void discardUploadContent(@NotNull UploadContent content) {
+        this.castUploadContent(content);
+    }
+
+    @Override
+    public void publishBlob(@NotNull OutputStream out, @NotNull String digest) {
+        blobs.put(digest, this.toBuffer(this.castOutputStream(out)));
+    }
+
+    @Override
+    public boolean containsObject(@NotNull StorageObject object) {
+        final var blobDigest = object.getBlobDigest();
+
+        return blobDigest != null
+                ? blobs.containsKey(blobDigest)
+                : objects.containsKey(Objects.requireNonNull(object.getId()));
+    }
+
+    @Override
+    public void deleteObject(@NotNull StorageObject object) {
+        if (objects.remove(Objects.requireNonNull(object.getId())) == null) {
+            log.warn("No content stored for {}", object.getId());
+
+            throw new StorageObjectAccessException();
+        }
+    }
+
+    @Override
+    public void deleteBlob(@NotNull String digest) {
+        blobs.remove(digest);
+    }
+
+    @Override
+    public boolean rebalanceObject(@NotNull StorageObject object) {
+        return false;
+    }
+
+    @Override
+    public boolean rebalanceBlob(@NotNull String digest) {
+        return false;
+    }
+
+    @Override
+    public boolean supportsTiering() {
+        return false;
+    }
+
+    @Override
+    public boolean moveObject(@NotNull StorageObject object, @NotNull StorageTier tier, final boolean compress) {
+        return false;
+    }
+
+    @Override
+    public void processIoException(@NotNull IOException e) {
+        throw this.createException(e);
+    }
+
+    @Autowired
+    public void setProperties(final StorageConfigurationProperties properties) {
+        this.properties = properties;
+    }
+
+    private ByteBuffer toBuffer(final StagedMemoryOutputStream out) {
+        final ByteBuffer buffer;
+
+        if (properties.isMemoryOffHeap()) {
+            buffer = ByteBuffer.allocateDirect(out.size());
+            buffer.put(out.getBuffer()).flip();
+        } else {
+            buffer = out.getBuffer();
+        }
+
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private MemoryUploadContent castUploadContent(final UploadContent content) {
+        if (content instanceof MemoryUploadContent memoryContent) {
+            return memoryContent;
+        }
+
+        throw new IllegalArgumentException("The upload content was not created by this accessor.");
+    }
+
+    private StagedMemoryOutputStream castOutputStream(final OutputStream out) {
+        if (out instanceof StagedMemoryOutputStream stagedOut) {
+            return stagedOut;
+        }
+
+        throw new IllegalArgumentException("The output stream was not created by this accessor.");
+    }
+
+    private StorageObjectAccessException createException(final IOException e) {
+        log.warn("Failed to access the stored content", e);
+
+        return new StorageObjectAccessException();
+    }
+
+    private static final class StagedMemoryOutputStream extends ByteArrayOutputStream {
+
+        private final String id;
+
+        @Nullable
+        private final MemoryUploadContent upload;
+
+        private StagedMemoryOutputStream(final String id) {
+            this.id = id;
+            this.upload = null;
+        }
+
+        // adopts the completely written content without copying it.
+        private StagedMemoryOutputStream(final String id, final MemoryUploadContent upload) {
+            super(0);
+            this.id = id;
+            this.upload = upload;
+            this.buf = upload.getContent();
+            this.count = buf.length;
+        }
+
+        // wraps the written bytes without copying them.
+        private synchronized ByteBuffer getBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor.impl;
+
+import dev.d1s.hole.accessor.UploadContent;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+public final class MemoryUploadContent implements UploadContent {
+
+    private final byte[] content;
+
+    private volatile boolean consumed;
+
+    public MemoryUploadContent(final int length) {
+        this.content = new byte[length];
+    }
+
+    @Override
+    public long getLength() {
+        return content.length;
+    }
+
+    @Override
+    public void write(final long position, @NotNull final InputStream in, final long length) throws IOException {
+        final var offset = (int) position;
+
+        var written = 0;
+
+        while (written < length) {
+            final var read = in.read(content, offset + written, (int) length - written);
+
+            if (read == -1) {
+                throw new EOFException("The chunk ended after " + written + " of " + length + " bytes.");
+            }
+
+            written += read;
+        }
+    }
+
+    @NotNull
+    @Override
+    public InputStream createInputStream(final long position, final long length) {
+        final var start = (int) Math.min(position, content.length);
+        final var end = (int) Math.min(start + length, content.length);
+
+        return new ByteBufferInputStream(ByteBuffer.wrap(content, start, end - start));
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return !consumed;
+    }
+
+    @NotNull
+    byte[] getContent() {
+        return content;
+    }
+
+    // the committed object may share the array, so the upload can't be written anymore.
+    void consume() {
+        consumed = true;
+    }
+}
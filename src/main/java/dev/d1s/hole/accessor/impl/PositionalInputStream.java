@@ -0,0 +1,84 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Reads with explicit positions, so several streams may be opened over the same channel
+// without moving its position. Closing the stream leaves the channel open, the handle owns it.
+final class PositionalInputStream extends InputStream {
+
+    private final FileChannel channel;
+
+    private final long end;
+
+    private long position;
+
+    PositionalInputStream(final FileChannel channel, final long position, final long end) {
+        this.channel = channel;
+        this.position = position;
+        this.end = end;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final var buffer = new byte[1];
+
+        return this.read(buffer, 0, 1) == -1 ? -1 : buffer[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (position >= end) {
+            return -1;
+        }
+
+        final var read = channel.read(
+                ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)),
+                position
+        );
+
+        if (read == -1) {
+            return -1;
+        }
+
+        position += read;
+
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) {
+        final var skipped = Math.max(0L, Math.min(n, end - position));
+
+        position += skipped;
+
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0L, end - position));
+    }
+}
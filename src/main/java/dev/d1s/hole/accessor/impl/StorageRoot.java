@@ -0,0 +1,163 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor.impl;
+
+import dev.d1s.hole.entity.storageObject.StorageTier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class StorageRoot {
+
+    // the placement asks for the usable space on every write, so the answer is reused for a while.
+    private static final long USABLE_SPACE_REFRESH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    // a root that failed a read is avoided for a while, unless it is the only one holding the content.
+    private static final long FAILURE_COOL_DOWN = TimeUnit.SECONDS.toNanos(30);
+
+    private static final int LATENCY_SMOOTHING = 8;
+
+    private static final Logger log = LogManager.getLogger();
+
+    private final String name;
+
+    private final Path path;
+
+    private final int weight;
+
+    private final StorageTier tier;
+
+    private final FileStore fileStore;
+
+    private volatile long usableSpace;
+
+    private volatile long usableSpaceCheckTime;
+
+    private final AtomicInteger activeReads = new AtomicInteger();
+
+    // an exponentially weighted average of the time it takes to open a content.
+    private volatile long openLatency;
+
+    private volatile long failureTime;
+
+    private volatile boolean failed;
+
+    StorageRoot(
+            @NotNull final String name,
+            @NotNull final Path path,
+            final int weight,
+            @NotNull final StorageTier tier,
+            @NotNull final FileStore fileStore
+    ) {
+        this.name = name;
+        this.path = path;
+        this.weight = weight;
+        this.tier = tier;
+        this.fileStore = fileStore;
+        this.usableSpaceCheckTime = System.nanoTime() - USABLE_SPACE_REFRESH_INTERVAL;
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    @NotNull
+    public Path getPath() {
+        return path;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    @NotNull
+    public StorageTier getTier() {
+        return tier;
+    }
+
+    @NotNull
+    public FileStore getFileStore() {
+        return fileStore;
+    }
+
+    public long getUsableSpace() {
+        final var now = System.nanoTime();
+
+        if (now - usableSpaceCheckTime >= USABLE_SPACE_REFRESH_INTERVAL) {
+            try {
+                usableSpace = fileStore.getUsableSpace();
+            } catch (final IOException e) {
+                log.warn("Failed to check the usable space of the storage root {}: {}", name, e.getMessage());
+
+                usableSpace = 0L;
+            }
+
+            usableSpaceCheckTime = now;
+        }
+
+        return usableSpace;
+    }
+
+    public int getActiveReads() {
+        return activeReads.get();
+    }
+
+    public void acquireRead() {
+        activeReads.incrementAndGet();
+    }
+
+    public void releaseRead() {
+        activeReads.decrementAndGet();
+    }
+
+    public long getOpenLatency() {
+        return openLatency;
+    }
+
+    // racy updates only lose a sample, which doesn't matter for an average.
+    public void recordOpenLatency(final long latency) {
+        final var current = openLatency;
+
+        openLatency = current + (latency - current) / LATENCY_SMOOTHING;
+    }
+
+    public boolean isHealthy() {
+        return !failed || System.nanoTime() - failureTime >= FAILURE_COOL_DOWN;
+    }
+
+    public void markFailed() {
+        failureTime = System.nanoTime();
+        failed = true;
+    }
+
+    @Override
+    public String toString() {
+        return "StorageRoot{" +
+                "name='" + name + '\'' +
+                ", path='" + path + '\'' +
+                ", weight=" + weight +
+                ", tier=" + tier +
+                '}';
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor.impl;
+
+import dev.d1s.hole.constant.error.StorageErrorConstants;
+import dev.d1s.hole.constant.properties.ConfigurationPropertiesPrefixConstants;
+import dev.d1s.hole.constant.storage.StorageBackendConstants;
+import dev.d1s.hole.entity.storageObject.StorageTier;
+import dev.d1s.hole.exception.storage.IllegalStorageRootException;
+import dev.d1s.hole.properties.StorageConfigurationProperties;
+import org.apache.commons.codec.digest.MurmurHash3;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// Places the keys on the configured roots with consistent hashing, so adding a root only moves
+// the share of the objects that the new root takes over. Every root owns a number of points
+// on the ring proportional to its weight.
+@Component
+@ConditionalOnProperty(
+        prefix = ConfigurationPropertiesPrefixConstants.STORAGE,
+        name = StorageBackendConstants.BACKEND_PROPERTY,
+        havingValue = StorageBackendConstants.FILESYSTEM_BACKEND,
+        matchIfMissing = true
+)
+public class StorageRootRing implements InitializingBean {
+
+    private static final int POINTS_PER_WEIGHT = 64;
+
+    private static final Logger log = LogManager.getLogger();
+
+    // every tier has a ring of its own, the new objects are placed on the hot one.
+    private final Map<StorageTier, NavigableMap<Integer, StorageRoot>> rings = new EnumMap<>(StorageTier.class);
+
+    private final Map<StorageTier, List<StorageRoot>> tierRoots = new EnumMap<>(StorageTier.class);
+
+    private final Map<String, StorageRoot> rootsByName = new HashMap<>();
+
+    private final List<StorageRoot> roots = new ArrayList<>();
+
+    private StorageConfigurationProperties properties;
+
+    // hosts the pack segments and the objects stored before the striping was configured.
+    @NotNull
+    public StorageRoot getPrimary() {
+        return roots.get(0);
+    }
+
+    @NotNull
+    public List<StorageRoot> getRoots() {
+        return roots;
+    }
+
+    public boolean isStriped() {
+        return roots.size() > 1;
+    }
+
+    public boolean isTiered() {
+        return !tierRoots.get(StorageTier.COLD).isEmpty();
+    }
+
+    // the objects without a recorded root live on the primary one.
+    @Nullable
+    public StorageRoot getRoot(@Nullable final String name) {
+        return name != null ? rootsByName.get(name) : this.getPrimary();
+    }
+
+    // all roots, starting with the given tier's ring, each ring walked from the owner of the key on.
+    @NotNull
+    public List<StorageRoot> locate(@NotNull final String key, @NotNull final StorageTier tier) {
+        final var located = new ArrayList<StorageRoot>(roots.size());
+
+        for (final var currentTier : StorageTier.values()) {
+            if (currentTier == tier) {
+                located.addAll(0, this.walk(key, currentTier));
+            } else {
+                located.addAll(this.walk(key, currentTier));
+            }
+        }
+
+        return located;
+    }
+
+    @NotNull
+    public List<StorageRoot> locate(@NotNull final String key) {
+        return this.locate(key, StorageTier.HOT);
+    }
+
+    @NotNull
+    public StorageRoot select(@NotNull final String key, final long size) {
+        return this.selectReplicas(key, size).get(0);
+    }
+
+    @NotNull
+    public List<StorageRoot> selectReplicas(@NotNull final String key, final long size) {
+        return this.selectReplicas(key, size, StorageTier.HOT);
+    }
+
+    // the first roots of the tier along its ring that keep the reserved space after taking the content,
+    // completed with the emptiest ones if there are not enough of them.
+    @NotNull
+    public List<StorageRoot> selectReplicas(@NotNull final String key, final long size, @NotNull final StorageTier tier) {
+        final var candidates = this.walk(key, tier);
+
+        if (candidates.size() < 2) {
+            return candidates;
+        }
+
+        final var replicaCount = this.getReplicaCount(tier);
+
+        final var reservedSpace = properties.getRootReservedSpace().toBytes();
+
+        final var replicas = new ArrayList<StorageRoot>(replicaCount);
+
+        for (final var root : candidates) {
+            if (replicas.size() < replicaCount && root.getUsableSpace() - size >= reservedSpace) {
+                replicas.add(root);
+            }
+        }
+
+        if (replicas.size() < replicaCount) {
+            candidates.stream()
+                    .filter(root -> !replicas.contains(root))
+                    .sorted(Comparator.comparingLong(StorageRoot::getUsableSpace).reversed())
+                    .limit(replicaCount - replicas.size())
+                    .forEach(replicas::add);
+        }
+
+        return replicas;
+    }
+
+    public int getReplicaCount() {
+        return this.getReplicaCount(StorageTier.HOT);
+    }
+
+    public int getReplicaCount(@NotNull final StorageTier tier) {
+        return Math.min(properties.getReplicas(), tierRoots.get(tier).size());
+    }
+
+    @Nullable
+    public StorageRoot findRoot(@NotNull final Path path) {
+        for (final var root : roots) {
+            if (path.startsWith(root.getPath())) {
+                return root;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        final var configuredRoots = new ArrayList<StorageConfigurationProperties.Root>();
+
+        final var legacyRoot = properties.getRoot();
+
+        if (legacyRoot != null && !legacyRoot.isBlank()) {
+            final var root = new StorageConfigurationProperties.Root();
+            root.setPath(legacyRoot);
+
+            configuredRoots.add(root);
+        }
+
+        configuredRoots.addAll(properties.getRoots());
+
+        if (configuredRoots.isEmpty()) {
+            throw new IllegalStorageRootException(StorageErrorConstants.STORAGE_PATH_NOT_PRESENT_ERROR);
+        }
+
+        for (final var tier : StorageTier.values()) {
+            rings.put(tier, new TreeMap<>());
+            tierRoots.put(tier, new ArrayList<>());
+        }
+
+        for (final var configuredRoot : configuredRoots) {
+            final var root = this.createRoot(configuredRoot);
+
+            if (rootsByName.putIfAbsent(root.getName(), root) != null) {
+                throw new IllegalStorageRootException(StorageErrorConstants.STORAGE_ROOT_NAME_DUPLICATE_ERROR);
+            }
+
+            roots.add(root);
+
+            tierRoots.get(root.getTier()).add(root);
+
+            final var ring = rings.get(root.getTier());
+
+            for (int point = 0; point < root.getWeight() * POINTS_PER_WEIGHT; point++) {
+                ring.put(this.hash(root.getName() + "#" + point), root);
+            }
+        }
+
+        if (tierRoots.get(StorageTier.HOT).isEmpty()) {
+            throw new IllegalStorageRootException(StorageErrorConstants.HOT_STORAGE_ROOT_NOT_PRESENT_ERROR);
+        }
+
+        if (this.isStriped()) {
+            log.info("Striping the objects across the storage roots: {}", roots);
+        }
+
+        if (properties.getReplicas() > roots.size()) {
+            log.warn("{} replicas are configured, but there are only {} storage roots to hold them.",
+                    properties.getReplicas(), roots.size());
+        }
+
+        if (properties.getReplicas() > 1 && properties.getPackThreshold().toBytes() > 0L) {
+            log.warn("The pack segments are kept on the primary storage root only, the packed objects are not mirrored.");
+        }
+    }
+
+    @Autowired
+    public void setProperties(final StorageConfigurationProperties properties) {
+        this.properties = properties;
+    }
+
+    private StorageRoot createRoot(final StorageConfigurationProperties.Root configuredRoot) {
+        final var path = Paths.get(configuredRoot.getPath());
+
+        if (!path.isAbsolute()) {
+            throw new IllegalStorageRootException(StorageErrorConstants.STORAGE_PATH_NOT_ABSOLUTE_ERRROR);
+        }
+
+        if (!Files.exists(path)) {
+            throw new IllegalStorageRootException(StorageErrorConstants.STORAGE_PATH_DOES_NOT_EXIST_ERROR);
+        }
+
+        if (!Files.isDirectory(path)) {
+            throw new IllegalStorageRootException(StorageErrorConstants.STORAGE_PATH_NOT_A_DIRECTORY_ERROR);
+        }
+
+        final var name = configuredRoot.getName();
+
+        try {
+            return new StorageRoot(
+                    name != null && !name.isBlank() ? name : path.toString(),
+                    path,
+                    configuredRoot.getWeight(),
+                    configuredRoot.getTier(),
+                    Files.getFileStore(path)
+            );
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to access the storage root " + path, e);
+        }
+    }
+
+    private List<StorageRoot> walk(final String key, final StorageTier tier) {
+        final var ring = rings.get(tier);
+        final var rootCount = tierRoots.get(tier).size();
+
+        final var located = new LinkedHashSet<StorageRoot>();
+
+        final var hash = this.hash(key);
+
+        for (final var root : ring.tailMap(hash, true).values()) {
+            if (located.add(root) && located.size() == rootCount) {
+                return new ArrayList<>(located);
+            }
+        }
+
+        for (final var root : ring.headMap(hash, false).values()) {
+            if (located.add(root) && located.size() == rootCount) {
+                break;
+            }
+        }
+
+        return new ArrayList<>(located);
+    }
+
+    private int hash(final String key) {
+        return MurmurHash3.hash32x86(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
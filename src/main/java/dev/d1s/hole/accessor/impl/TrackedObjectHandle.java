@@ -0,0 +1,80 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor.impl;
+
+import dev.d1s.hole.accessor.ObjectHandle;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+// Counts the read as active on its root until the handle is closed, which is what the replica selection balances.
+final class TrackedObjectHandle implements ObjectHandle {
+
+    private final ObjectHandle handle;
+
+    private final StorageRoot root;
+
+    private boolean closed;
+
+    TrackedObjectHandle(@NotNull final ObjectHandle handle, @NotNull final StorageRoot root) {
+        this.handle = handle;
+        this.root = root;
+
+        root.acquireRead();
+    }
+
+    @Override
+    public long getSize() {
+        return handle.getSize();
+    }
+
+    @NotNull
+    @Override
+    public InputStream createInputStream() {
+        return handle.createInputStream();
+    }
+
+    @NotNull
+    @Override
+    public InputStream createInputStream(final long position, final long length) {
+        return handle.createInputStream(position, length);
+    }
+
+    @Nullable
+    @Override
+    public FileChannel getFileChannel() {
+        return handle.getFileChannel();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            handle.close();
+        } finally {
+            root.releaseRead();
+        }
+    }
+}
@@ -0,0 +1,687 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor.impl.pack;
+
+import dev.d1s.hole.accessor.ObjectHandle;
+import dev.d1s.hole.accessor.impl.FileObjectHandle;
+import dev.d1s.hole.accessor.impl.FileSynchronizer;
+import dev.d1s.hole.accessor.impl.StorageRootRing;
+import dev.d1s.hole.constant.properties.ConfigurationPropertiesPrefixConstants;
+import dev.d1s.hole.constant.storage.StorageBackendConstants;
+import dev.d1s.hole.properties.StorageConfigurationProperties;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+// Small contents are appended to large segment files instead of getting a file of their own.
+// Every record is self-describing, so the offset index is kept in memory and rebuilt on startup
+// by scanning the segments in order:
+//
+// [key length: int][value length: long][type: byte][key][value][crc32 of everything before: int]
+//
+// Deletions append tombstones. Segments full of dead records are rewritten by the compactor.
+@Component
+@ConditionalOnProperty(
+        prefix = ConfigurationPropertiesPrefixConstants.STORAGE,
+        name = StorageBackendConstants.BACKEND_PROPERTY,
+        havingValue = StorageBackendConstants.FILESYSTEM_BACKEND,
+        matchIfMissing = true
+)
+public class PackFileStore implements InitializingBean, DisposableBean {
+
+    private static final String SEGMENT_DIRECTORY = "packs";
+
+    private static final String SEGMENT_FILE_FORMAT = "%016d.pack";
+
+    private static final String SEGMENT_FILE_GLOB = "*.pack";
+
+    private static final byte PUT_RECORD = 1;
+
+    private static final byte DELETE_RECORD = 2;
+
+    private static final int RECORD_HEADER_LENGTH = Integer.BYTES + Long.BYTES + 1;
+
+    private static final int RECORD_CHECKSUM_LENGTH = Integer.BYTES;
+
+    private static final int MAX_KEY_LENGTH = 1024;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final Logger log = LogManager.getLogger();
+
+    private final Map<String, PackEntry> index = new ConcurrentHashMap<>();
+
+    private final NavigableMap<Long, PackSegment> segments = new ConcurrentSkipListMap<>();
+
+    // appends are serialized, this is what makes the writes sequential.
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    private StorageConfigurationProperties properties;
+
+    private TaskScheduler taskScheduler;
+
+    private FileSynchronizer fileSynchronizer;
+
+    private StorageRootRing storageRootRing;
+
+    private Path directory;
+
+    private volatile PackSegment activeSegment;
+
+    private ScheduledFuture<?> compaction;
+
+    public boolean isPackable(final long size) {
+        final var threshold = properties.getPackThreshold().toBytes();
+
+        return threshold > 0L && size <= threshold;
+    }
+
+    public boolean contains(@NotNull final String key) {
+        return index.containsKey(key);
+    }
+
+    @Nullable
+    public ObjectHandle open(@NotNull final String key) {
+        while (true) {
+            final var entry = index.get(key);
+
+            if (entry == null) {
+                return null;
+            }
+
+            final var segment = entry.segment();
+
+            if (segment.retain()) {
+                return new FileObjectHandle(
+                        segment.getChannel(),
+                        entry.valueOffset(),
+                        entry.valueLength(),
+                        segment::release
+                );
+            }
+
+            // the segment has just been compacted, so the entry is already moved.
+        }
+    }
+
+    public void put(@NotNull final String key, @NotNull final Path source) throws IOException {
+        final PackSegment segment;
+
+        try (final var sourceChannel = FileChannel.open(source, StandardOpenOption.READ)) {
+            appendLock.lock();
+
+            try {
+                final var entry = this.append(key, PUT_RECORD, sourceChannel, 0L, sourceChannel.size());
+
+                final var previous = index.put(key, entry);
+
+                if (previous != null) {
+                    previous.segment().addGarbage(previous.recordLength());
+                }
+
+                segment = entry.segment();
+            } finally {
+                appendLock.unlock();
+            }
+        }
+
+        // the force happens outside the append lock, so the concurrent appends can share it.
+        if (fileSynchronizer.isEnabled() && segment.retain()) {
+            try {
+                fileSynchronizer.sync(segment.getChannel());
+            } finally {
+                segment.release();
+            }
+        }
+    }
+
+    public boolean delete(@NotNull final String key) throws IOException {
+        if (!index.containsKey(key)) {
+            return false;
+        }
+
+        appendLock.lock();
+
+        try {
+            final var previous = index.get(key);
+
+            if (previous == null) {
+                return false;
+            }
+
+            final var tombstone = this.append(key, DELETE_RECORD, null, 0L, 0L);
+
+            index.remove(key);
+
+            previous.segment().addGarbage(previous.recordLength());
+            tombstone.segment().addGarbage(tombstone.recordLength());
+
+            return true;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // The keys of the entries in the segments that weren't appended to since the given time,
+    // the later ones might belong to the objects whose records are not committed yet.
+    // The iteration stops once the action returns false.
+    public void forEachKey(@NotNull final Instant appendedBefore, @NotNull final Predicate<String> action) {
+        final var settledSegments = new HashMap<PackSegment, Boolean>();
+
+        for (final var entry : index.entrySet()) {
+            final var settled = settledSegments.computeIfAbsent(
+                    entry.getValue().segment(),
+                    segment -> this.isModifiedBefore(segment, appendedBefore)
+            );
+
+            if (settled && !action.test(entry.getKey())) {
+                return;
+            }
+        }
+    }
+
+    public void compact() {
+        final var garbageRatio = properties.getPackGarbageRatio();
+
+        for (final var segment : segments.values()) {
+            if (segment == activeSegment || segment.getGarbageRatio() < garbageRatio) {
+                continue;
+            }
+
+            try {
+                this.compactSegment(segment);
+            } catch (final IOException e) {
+                log.error("Failed to compact the pack segment {}", segment.getPath(), e);
+            }
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        // the segments are few and shared by all small objects, so they are not striped.
+        this.directory = storageRootRing.getPrimary().getPath().resolve(SEGMENT_DIRECTORY);
+
+        // the existing segments stay readable even if packing is turned off.
+        if (Files.isDirectory(directory)) {
+            this.loadSegments();
+        }
+
+        final var interval = properties.getPackCompactionInterval();
+
+        this.compaction = taskScheduler.scheduleWithFixedDelay(this::compact, interval);
+    }
+
+    @Override
+    public void destroy() {
+        if (compaction != null) {
+            compaction.cancel(false);
+        }
+
+        appendLock.lock();
+
+        try {
+            segments.values().forEach(PackSegment::release);
+            segments.clear();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Autowired
+    public void setProperties(final StorageConfigurationProperties properties) {
+        this.properties = properties;
+    }
+
+    @Autowired
+    public void setTaskScheduler(final TaskScheduler taskScheduler) {
+        this.taskScheduler = taskScheduler;
+    }
+
+    @Autowired
+    public void setFileSynchronizer(final FileSynchronizer fileSynchronizer) {
+        this.fileSynchronizer = fileSynchronizer;
+    }
+
+    @Autowired
+    public void setStorageRootRing(final StorageRootRing storageRootRing) {
+        this.storageRootRing = storageRootRing;
+    }
+
+    private void loadSegments() throws IOException {
+        final var ids = new ArrayList<Long>();
+
+        try (final var entries = Files.newDirectoryStream(directory, SEGMENT_FILE_GLOB)) {
+            for (final var entry : entries) {
+                final var fileName = entry.getFileName().toString();
+
+                try {
+                    ids.add(Long.parseLong(fileName.substring(0, fileName.indexOf('.'))));
+                } catch (final NumberFormatException e) {
+                    log.warn("Skipping unexpected file in the pack directory: {}", entry);
+                }
+            }
+        }
+
+        ids.sort(null);
+
+        for (final var id : ids) {
+            final var segment = PackSegment.open(id, this.getSegmentPath(id));
+
+            segments.put(id, segment);
+
+            this.loadSegment(segment, id.equals(ids.get(ids.size() - 1)));
+
+            activeSegment = segment;
+        }
+
+        log.info("Loaded {} pack segments with {} entries", segments.size(), index.size());
+    }
+
+    private void loadSegment(final PackSegment segment, final boolean active) throws IOException {
+        final var channel = segment.getChannel();
+        final var size = channel.size();
+
+        var position = 0L;
+
+        while (position < size) {
+            final var record = this.readRecord(channel, position);
+
+            if (record == null) {
+                final var nextPosition = this.findNextRecord(channel, position + 1L, size);
+
+                // the appends only go to the active segment, so only its tail can be left broken by an interrupted one.
+                // a valid record following the broken one means it's not the tail.
+                if (active && nextPosition == size) {
+                    log.warn("Truncating the pack segment {} at {}: the tail is incomplete or corrupted",
+                            segment.getPath(), position);
+
+                    channel.truncate(position);
+
+                    break;
+                }
+
+                // the records following the corrupted one are still read. The corrupted bytes aren't counted
+                // as garbage, so the segment is left as is for an inspection.
+
+                log.error("The pack segment {} is corrupted from {} to {}, the records there are skipped",
+                        segment.getPath(), position, nextPosition);
+
+                position = nextPosition;
+
+                continue;
+            }
+
+            final PackEntry previous;
+
+            if (record.type() == PUT_RECORD) {
+                previous = index.put(
+                        record.key(),
+                        new PackEntry(segment, record.valueOffset(), record.valueLength(), record.length())
+                );
+            } else {
+                previous = index.remove(record.key());
+
+                segment.addGarbage(record.length());
+            }
+
+            if (previous != null) {
+                previous.segment().addGarbage(previous.recordLength());
+            }
+
+            position += record.length();
+        }
+
+        segment.setSize(position);
+    }
+
+    private void compactSegment(final PackSegment segment) throws IOException {
+        final var channel = segment.getChannel();
+        final var size = segment.getSize();
+        final var reclaimed = segment.getGarbage();
+
+        // the active segment may roll over while the records are moved, so all the receiving ones are tracked.
+        final var receivingSegments = new HashSet<PackSegment>();
+
+        var position = 0L;
+
+        while (position < size) {
+            final var record = this.readRecord(channel, position);
+
+            if (record == null) {
+                throw new IOException("Corrupted record at " + position);
+            }
+
+            appendLock.lock();
+
+            try {
+                final var key = record.key();
+
+                if (record.type() == PUT_RECORD) {
+                    final var entry = index.get(key);
+
+                    if (entry != null && entry.segment() == segment && entry.valueOffset() == record.valueOffset()) {
+                        final var movedEntry = this.append(
+                                key,
+                                PUT_RECORD,
+                                channel,
+                                record.valueOffset(),
+                                record.valueLength()
+                        );
+
+                        index.put(key, movedEntry);
+
+                        receivingSegments.add(movedEntry.segment());
+                    }
+                } else if (!index.containsKey(key) && segments.firstKey() < segment.getId()) {
+                    // an older segment may still hold the value hidden by this tombstone.
+                    final var tombstone = this.append(key, DELETE_RECORD, null, 0L, 0L);
+
+                    tombstone.segment().addGarbage(tombstone.recordLength());
+
+                    receivingSegments.add(tombstone.segment());
+                }
+            } finally {
+                appendLock.unlock();
+            }
+
+            position += record.length();
+        }
+
+        // the moved records have to be durable before their only other copy is gone.
+        for (final var receivingSegment : receivingSegments) {
+            receivingSegment.getChannel().force(false);
+        }
+
+        segments.remove(segment.getId());
+
+        Files.deleteIfExists(segment.getPath());
+
+        segment.release();
+
+        log.info("Compacted the pack segment {}, reclaimed {} bytes", segment.getPath(), reclaimed);
+    }
+
+    private PackEntry append(
+            final String key,
+            final byte type,
+            final FileChannel source,
+            final long sourcePosition,
+            final long valueLength
+    ) throws IOException {
+        final var keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final var recordLength = RECORD_HEADER_LENGTH + keyBytes.length + valueLength + RECORD_CHECKSUM_LENGTH;
+
+        final var segment = this.getActiveSegment(recordLength);
+        final var channel = segment.getChannel();
+        final var position = segment.getSize();
+        final var valueOffset = position + RECORD_HEADER_LENGTH + keyBytes.length;
+
+        final var checksum = new CRC32();
+
+        try {
+            final var header = ByteBuffer.allocate(RECORD_HEADER_LENGTH)
+                    .putInt(keyBytes.length)
+                    .putLong(valueLength)
+                    .put(type)
+                    .flip();
+
+            checksum.update(header.array());
+            checksum.update(keyBytes);
+
+            this.writeFully(channel, header, position);
+            this.writeFully(channel, ByteBuffer.wrap(keyBytes), position + RECORD_HEADER_LENGTH);
+
+            if (source != null) {
+                final var buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+
+                var copied = 0L;
+
+                while (copied < valueLength) {
+                    buffer.clear().limit((int) Math.min(COPY_BUFFER_SIZE, valueLength - copied));
+
+                    final var read = source.read(buffer, sourcePosition + copied);
+
+                    if (read == -1) {
+                        throw new IOException("The source ended before the expected length.");
+                    }
+
+                    checksum.update(buffer.array(), 0, read);
+
+                    this.writeFully(channel, buffer.flip(), valueOffset + copied);
+
+                    copied += read;
+                }
+            }
+
+            this.writeFully(
+                    channel,
+                    ByteBuffer.allocate(RECORD_CHECKSUM_LENGTH).putInt((int) checksum.getValue()).flip(),
+                    valueOffset + valueLength
+            );
+        } catch (final IOException e) {
+            // the partial record would be overwritten anyway, but a shorter one could leave its tail behind.
+            channel.truncate(position);
+
+            throw e;
+        }
+
+        segment.setSize(position + recordLength);
+
+        return new PackEntry(segment, valueOffset, valueLength, recordLength);
+    }
+
+    private PackSegment getActiveSegment(final long recordLength) throws IOException {
+        final var currentSegment = activeSegment;
+
+        if (currentSegment != null && (currentSegment.getSize() == 0L
+                || currentSegment.getSize() + recordLength <= properties.getPackSegmentSize().toBytes())) {
+            return currentSegment;
+        }
+
+        Files.createDirectories(directory);
+
+        final var id = segments.isEmpty() ? 1L : segments.lastKey() + 1L;
+
+        final var segment = PackSegment.open(id, this.getSegmentPath(id));
+
+        fileSynchronizer.syncDirectory(directory);
+
+        segments.put(id, segment);
+
+        activeSegment = segment;
+
+        log.debug("Started the pack segment {}", segment.getPath());
+
+        return segment;
+    }
+
+    // the position of the first valid record from the given one on, the size if there's none.
+    // the headers are checked in memory, only the plausible ones are verified against their checksums.
+    private long findNextRecord(final FileChannel channel, final long from, final long size) throws IOException {
+        final var buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+
+        var bufferPosition = from;
+
+        while (bufferPosition + RECORD_HEADER_LENGTH <= size) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), size - bufferPosition));
+
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, bufferPosition + buffer.position()) == -1) {
+                    break;
+                }
+            }
+
+            final var read = buffer.position();
+
+            for (var offset = 0; offset + RECORD_HEADER_LENGTH <= read; offset++) {
+                final var keyLength = buffer.getInt(offset);
+                final var valueLength = buffer.getLong(offset + Integer.BYTES);
+                final var type = buffer.get(offset + Integer.BYTES + Long.BYTES);
+
+                if (keyLength <= 0 || keyLength > MAX_KEY_LENGTH || valueLength < 0L
+                        || (type != PUT_RECORD && type != DELETE_RECORD)) {
+                    continue;
+                }
+
+                final var candidate = bufferPosition + offset;
+
+                if (this.readRecord(channel, candidate) != null) {
+                    return candidate;
+                }
+            }
+
+            // the headers crossing the end of the buffer are checked with the next one.
+            bufferPosition += Math.max(1, read - RECORD_HEADER_LENGTH + 1);
+        }
+
+        return size;
+    }
+
+    private PackRecord readRecord(final FileChannel channel, final long position) throws IOException {
+        final var size = channel.size();
+
+        final var header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+
+        if (!this.readFully(channel, header, position)) {
+            return null;
+        }
+
+        final var keyLength = header.flip().getInt();
+        final var valueLength = header.getLong();
+        final var type = header.get();
+
+        if (keyLength <= 0 || keyLength > MAX_KEY_LENGTH || valueLength < 0L
+                || (type != PUT_RECORD && type != DELETE_RECORD)) {
+            return null;
+        }
+
+        final var length = RECORD_HEADER_LENGTH + keyLength + valueLength + RECORD_CHECKSUM_LENGTH;
+
+        if (position + length > size) {
+            return null;
+        }
+
+        final var key = ByteBuffer.allocate(keyLength);
+
+        if (!this.readFully(channel, key, position + RECORD_HEADER_LENGTH)) {
+            return null;
+        }
+
+        final var checksum = new CRC32();
+
+        checksum.update(header.array());
+        checksum.update(key.array());
+
+        final var valueOffset = position + RECORD_HEADER_LENGTH + keyLength;
+
+        final var buffer = ByteBuffer.allocate((int) Math.min(COPY_BUFFER_SIZE, Math.max(valueLength, 1L)));
+
+        var verified = 0L;
+
+        while (verified < valueLength) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), valueLength - verified));
+
+            if (!this.readFully(channel, buffer, valueOffset + verified)) {
+                return null;
+            }
+
+            checksum.update(buffer.array(), 0, buffer.position());
+
+            verified += buffer.position();
+        }
+
+        final var storedChecksum = ByteBuffer.allocate(RECORD_CHECKSUM_LENGTH);
+
+        if (!this.readFully(channel, storedChecksum, valueOffset + valueLength)
+                || storedChecksum.flip().getInt() != (int) checksum.getValue()) {
+            return null;
+        }
+
+        return new PackRecord(
+                new String(key.array(), StandardCharsets.UTF_8),
+                type,
+                valueOffset,
+                valueLength,
+                length
+        );
+    }
+
+    private boolean readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        var offset = 0L;
+
+        while (buffer.hasRemaining()) {
+            final var read = channel.read(buffer, position + offset);
+
+            if (read == -1) {
+                return false;
+            }
+
+            offset += read;
+        }
+
+        return true;
+    }
+
+    private void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        var offset = 0L;
+
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, position + offset);
+        }
+    }
+
+    private boolean isModifiedBefore(final PackSegment segment, final Instant time) {
+        try {
+            return Files.getLastModifiedTime(segment.getPath()).toInstant().isBefore(time);
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    private Path getSegmentPath(final long id) {
+        return directory.resolve(SEGMENT_FILE_FORMAT.formatted(id));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.accessor.impl.pack;
+
+import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The store holds one reference to every segment and every open handle holds another one,
+// so a compacted segment is closed only after the last reader is done with it.
+final class PackSegment {
+
+    private final long id;
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private final AtomicLong garbage = new AtomicLong();
+
+    private volatile long size;
+
+    private PackSegment(final long id, final Path path, final FileChannel channel, final long size) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.size = size;
+    }
+
+    @NotNull
+    static PackSegment open(final long id, @NotNull final Path path) throws IOException {
+        final var channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        );
+
+        try {
+            return new PackSegment(id, path, channel, channel.size());
+        } catch (final IOException e) {
+            IOUtils.closeQuietly(channel);
+
+            throw e;
+        }
+    }
+
+    long getId() {
+        return id;
+    }
+
+    @NotNull
+    Path getPath() {
+        return path;
+    }
+
+    @NotNull
+    FileChannel getChannel() {
+        return channel;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    void setSize(final long size) {
+        this.size = size;
+    }
+
+    void addGarbage(final long length) {
+        garbage.addAndGet(length);
+    }
+
+    long getGarbage() {
+        return garbage.get();
+    }
+
+    double getGarbageRatio() {
+        final var currentSize = size;
+
+        return currentSize == 0L ? 0.0 : (double) garbage.get() / currentSize;
+    }
+
+    boolean retain() {
+        while (true) {
+            final var current = references.get();
+
+            if (current == 0) {
+                return false;
+            }
+
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            IOUtils.closeQuietly(channel);
+        }
+    }
+}
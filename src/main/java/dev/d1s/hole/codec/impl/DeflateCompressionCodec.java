@@ -0,0 +1,58 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.codec.impl;
+
+import dev.d1s.hole.codec.CompressionCodec;
+import dev.d1s.hole.constant.compression.CompressionConstants;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// zlib wrapped deflate, which is what the "deflate" content coding stands for.
+@Component
+public class DeflateCompressionCodec implements CompressionCodec {
+
+    @NotNull
+    @Override
+    public String getName() {
+        return CompressionConstants.DEFLATE_CODEC;
+    }
+
+    @NotNull
+    @Override
+    public String getContentEncoding() {
+        return CompressionConstants.DEFLATE_CODEC;
+    }
+
+    @NotNull
+    @Override
+    public OutputStream createCompressingOutputStream(@NotNull final OutputStream out) {
+        return new DeflaterOutputStream(out, new Deflater(), CompressionConstants.CODEC_BUFFER_SIZE);
+    }
+
+    @NotNull
+    @Override
+    public InputStream createDecompressingInputStream(@NotNull final InputStream in) {
+        return new InflaterInputStream(in, new Inflater(), CompressionConstants.CODEC_BUFFER_SIZE);
+    }
+}
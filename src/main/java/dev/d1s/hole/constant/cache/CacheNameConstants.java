@@ -20,6 +20,10 @@ public final class CacheNameConstants {
 
     public static final String SHA256_DIGEST_CACHE = "sha-256-digest";
 
+    public static final String OBJECT_CONTENT_CACHE = "object-content";
+
+    public static final String DERIVED_KEY_CACHE = "derived-key";
+
     private CacheNameConstants() {
     }
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.constant.compression;
+
+import java.util.Set;
+
+public final class CompressionConstants {
+
+    public static final String NONE_CODEC = "none";
+
+    public static final String GZIP_CODEC = "gzip";
+
+    public static final String DEFLATE_CODEC = "deflate";
+
+    public static final int CODEC_BUFFER_SIZE = 64 * 1024;
+
+    public static final Set<String> COMPRESSED_CONTENT_TYPE_PREFIXES = Set.of(
+            "image/",
+            "video/",
+            "audio/"
+    );
+
+    public static final Set<String> COMPRESSED_CONTENT_TYPES = Set.of(
+            "application/gzip",
+            "application/x-gzip",
+            "application/x-bzip2",
+            "application/x-xz",
+            "application/x-lzma",
+            "application/x-7z-compressed",
+            "application/x-rar-compressed",
+            "application/zstd",
+            "application/pdf"
+    );
+
+    private CompressionConstants() {
+    }
+}
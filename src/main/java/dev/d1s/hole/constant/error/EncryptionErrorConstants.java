@@ -22,6 +22,15 @@ public final class EncryptionErrorConstants {
 
     public static final String NOTHING_TO_ENCRYPT_ERROR = "Nothing to encrypt. Encryption must not be used.";
 
+    public static final String NEW_ENCRYPTION_KEY_NOT_PRESENT_ERROR = "New encryption key must be present.";
+
+    public static final String OBJECT_NOT_ENCRYPTED_ERROR = "Object is not encrypted.";
+
+    public static final String DATA_KEY_NOT_PRESENT_ERROR =
+            "Object is encrypted with the encryption key itself, so it must be overwritten to change the key.";
+
+    public static final String WRONG_ENCRYPTION_KEY_ERROR = "Wrong encryption key.";
+
     private EncryptionErrorConstants() {
     }
 }
@@ -18,6 +18,9 @@ package dev.d1s.hole.constant.error;
 
 public final class StorageErrorConstants {
 
+    public static final String STORAGE_PATH_NOT_PRESENT_ERROR =
+            "The storage path is required by the filesystem backend.";
+
     public static final String STORAGE_PATH_NOT_ABSOLUTE_ERRROR =
             "The provided storage path is not absolute.";
 
@@ -27,6 +30,12 @@ public final class StorageErrorConstants {
     public static final String STORAGE_PATH_NOT_A_DIRECTORY_ERROR =
             "The provided storage path is not a directory.";
 
+    public static final String STORAGE_ROOT_NAME_DUPLICATE_ERROR =
+            "The storage root names must be unique.";
+
+    public static final String HOT_STORAGE_ROOT_NOT_PRESENT_ERROR =
+            "At least one of the storage roots must be hot.";
+
     private StorageErrorConstants() {
     }
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.constant.error;
+
+public final class UploadSessionErrorConstants {
+
+    public static final String UPLOAD_SESSION_NOT_FOUND_ERROR =
+            "Upload session was not found by the provided identifier (%s).";
+
+    public static final String CONTENT_LENGTH_NOT_POSITIVE_ERROR =
+            "Content length of the upload must be positive.";
+
+    public static final String CHUNK_OUT_OF_BOUNDS_ERROR =
+            "Chunk must be non-empty and lie within the declared content length.";
+
+    public static final String CHUNK_TRUNCATED_ERROR =
+            "Chunk content ended before its declared length.";
+
+    public static final String CHUNK_CONFLICT_ERROR =
+            "Chunk overlaps with a chunk already received or being received.";
+
+    public static final String UPLOAD_INCOMPLETE_ERROR =
+            "Upload session can't be committed until all of its content is received.";
+
+    public static final String UPLOAD_SESSION_CLOSED_ERROR =
+            "Upload session is being committed or aborted.";
+
+    private UploadSessionErrorConstants() {
+    }
+}
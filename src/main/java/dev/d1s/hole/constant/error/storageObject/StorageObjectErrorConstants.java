@@ -29,6 +29,9 @@ public final class StorageObjectErrorConstants {
     public static final String FILE_NAME_NOT_PRESENT_ERROR =
             "File name must be present within the request.";
 
+    public static final String GROUP_NOT_PRESENT_ERROR =
+            "Object group must be present within the request.";
+
     private StorageObjectErrorConstants() {
     }
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.constant.header;
+
+public final class RequestHeaderConstants {
+
+    private static final String HEADER_PREFIX = "X-Hole-";
+
+    public static final String GROUP_HEADER =
+            RequestHeaderConstants.HEADER_PREFIX + "Group";
+
+    public static final String NAME_HEADER =
+            RequestHeaderConstants.HEADER_PREFIX + "Name";
+
+    public static final String ENCRYPTION_KEY_HEADER =
+            RequestHeaderConstants.HEADER_PREFIX + "Encryption-Key";
+
+    public static final String NEW_ENCRYPTION_KEY_HEADER =
+            RequestHeaderConstants.HEADER_PREFIX + "New-Encryption-Key";
+
+    private RequestHeaderConstants() {
+    }
+}
@@ -32,6 +32,9 @@ public final class StorageObjectLongPollingConstants {
     public static final String STORAGE_OBJECT_DELETED_GROUP =
             StorageObjectLongPollingConstants.GROUP_PREFIX + "deleted";
 
+    public static final String STORAGE_OBJECT_CORRUPTED_GROUP =
+            StorageObjectLongPollingConstants.GROUP_PREFIX + "corrupted";
+
     private StorageObjectLongPollingConstants() {
     }
 }
@@ -26,6 +26,8 @@ public final class StorageObjectRequestMappingConstants {
 
     private static final String RAW_OBJECT_SUFFIX = "/raw";
 
+    private static final String OBJECT_KEY_SUFFIX = "/key";
+
     public static final String GET_OBJECT_MAPPING =
             StorageObjectRequestMappingConstants.STORAGE_OBJECT_BASE_MAPPING
                     + CommonRequestMappingConstants.ID_MAPPING;
@@ -50,6 +52,11 @@ public final class StorageObjectRequestMappingConstants {
                     + CommonRequestMappingConstants.ID_MAPPING
                     + StorageObjectRequestMappingConstants.RAW_OBJECT_SUFFIX;
 
+    public static final String PUT_OBJECT_KEY_MAPPING =
+            StorageObjectRequestMappingConstants.STORAGE_OBJECT_BASE_MAPPING
+                    + CommonRequestMappingConstants.ID_MAPPING
+                    + StorageObjectRequestMappingConstants.OBJECT_KEY_SUFFIX;
+
     public static final String DELETE_OBJECT_MAPPING =
             StorageObjectRequestMappingConstants.STORAGE_OBJECT_BASE_MAPPING
                     + CommonRequestMappingConstants.ID_MAPPING;
@@ -26,6 +26,21 @@ public final class ConfigurationPropertiesPrefixConstants {
     public static final String STORAGE =
             ConfigurationPropertiesPrefixConstants.BASE_PREFIX + "storage";
 
+    public static final String CACHE =
+            ConfigurationPropertiesPrefixConstants.BASE_PREFIX + "cache";
+
+    public static final String TIERING =
+            ConfigurationPropertiesPrefixConstants.BASE_PREFIX + "tiering";
+
+    public static final String RECONCILIATION =
+            ConfigurationPropertiesPrefixConstants.BASE_PREFIX + "reconciliation";
+
+    public static final String SCRUBBING =
+            ConfigurationPropertiesPrefixConstants.BASE_PREFIX + "scrubbing";
+
+    public static final String ENCRYPTION =
+            ConfigurationPropertiesPrefixConstants.BASE_PREFIX + "encryption";
+
     private ConfigurationPropertiesPrefixConstants() {
     }
 }
\ No newline at end of file
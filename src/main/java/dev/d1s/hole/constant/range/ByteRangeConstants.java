@@ -0,0 +1,33 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.constant.range;
+
+public final class ByteRangeConstants {
+
+    public static final String BYTES_RANGE_UNIT = "bytes";
+
+    public static final String NONE_RANGE_UNIT = "none";
+
+    public static final String MULTIPART_BYTERANGES_CONTENT_TYPE = "multipart/byteranges; boundary=";
+
+    public static final String CONTENT_RANGE_FORMAT = ByteRangeConstants.BYTES_RANGE_UNIT + " %d-%d/%d";
+
+    public static final String UNSATISFIED_CONTENT_RANGE_FORMAT = ByteRangeConstants.BYTES_RANGE_UNIT + " */%d";
+
+    private ByteRangeConstants() {
+    }
+}
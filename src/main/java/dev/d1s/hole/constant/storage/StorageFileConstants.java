@@ -0,0 +1,34 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.constant.storage;
+
+public final class StorageFileConstants {
+
+    // the staged content is hidden from the directory scans until it is published.
+    public static final String TEMPORARY_FILE_PREFIX = ".";
+
+    public static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+
+    // the cold objects may be stored compressed next to where their plain file would be.
+    public static final String COMPRESSED_FILE_SUFFIX = ".z";
+
+    // the blobs share the pack index with the objects.
+    public static final String PACKED_BLOB_KEY_PREFIX = "blob:";
+
+    private StorageFileConstants() {
+    }
+}
@@ -16,19 +16,23 @@
 
 package dev.d1s.hole.controller;
 
+import dev.d1s.hole.constant.header.RequestHeaderConstants;
 import dev.d1s.hole.constant.mapping.storageObject.StorageObjectRequestMappingConstants;
 import dev.d1s.hole.dto.storageObject.StorageObjectDto;
 import dev.d1s.hole.dto.storageObject.StorageObjectUpdateDto;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.constraints.NotBlank;
+import java.io.InputStream;
 import java.util.Set;
 
 @Validated
@@ -51,6 +55,7 @@ public interface StorageObjectController {
             @RequestParam(required = false) final String contentDisposition,
             @Nullable
             @RequestParam(required = false) final String encryptionKey,
+            @NotNull final HttpServletRequest request,
             @NotNull final HttpServletResponse response
     );
 
@@ -72,6 +77,27 @@ public interface StorageObjectController {
             @RequestParam(required = false) final String name
     );
 
+    @NotNull
+    @PostMapping(
+            value = StorageObjectRequestMappingConstants.POST_OBJECT_MAPPING,
+            consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE
+    )
+    ResponseEntity<StorageObjectDto> postObjectStream(
+            @NotNull final InputStream content,
+            @Nullable
+            @RequestParam(required = false) final String group,
+            @Nullable
+            @RequestHeader(name = RequestHeaderConstants.GROUP_HEADER, required = false) final String groupHeader,
+            @Nullable
+            @RequestParam(required = false) final String encryptionKey,
+            @Nullable
+            @RequestHeader(name = RequestHeaderConstants.ENCRYPTION_KEY_HEADER, required = false) final String encryptionKeyHeader,
+            @Nullable
+            @RequestParam(required = false) final String name,
+            @Nullable
+            @RequestHeader(name = RequestHeaderConstants.NAME_HEADER, required = false) final String nameHeader
+    );
+
     @NotNull
     @PutMapping(StorageObjectRequestMappingConstants.PUT_OBJECT_MAPPING)
     ResponseEntity<StorageObjectDto> putObject(
@@ -97,6 +123,42 @@ public interface StorageObjectController {
             @RequestParam(required = false) final String name
     );
 
+    @NotNull
+    @PutMapping(
+            value = StorageObjectRequestMappingConstants.PUT_RAW_OBJECT_MAPPING,
+            consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE
+    )
+    ResponseEntity<?> putRawObjectStream(
+            @NotNull
+            @PathVariable
+            @NotBlank final String id,
+            @NotNull final InputStream content,
+            @Nullable
+            @RequestParam(required = false) final String encryptionKey,
+            @Nullable
+            @RequestHeader(name = RequestHeaderConstants.ENCRYPTION_KEY_HEADER, required = false) final String encryptionKeyHeader,
+            @Nullable
+            @RequestParam(required = false) final String name,
+            @Nullable
+            @RequestHeader(name = RequestHeaderConstants.NAME_HEADER, required = false) final String nameHeader
+    );
+
+    @NotNull
+    @PutMapping(StorageObjectRequestMappingConstants.PUT_OBJECT_KEY_MAPPING)
+    ResponseEntity<?> putObjectKey(
+            @NotNull
+            @PathVariable
+            @NotBlank final String id,
+            @Nullable
+            @RequestParam(required = false) final String encryptionKey,
+            @Nullable
+            @RequestHeader(name = RequestHeaderConstants.ENCRYPTION_KEY_HEADER, required = false) final String encryptionKeyHeader,
+            @Nullable
+            @RequestParam(required = false) final String newEncryptionKey,
+            @Nullable
+            @RequestHeader(name = RequestHeaderConstants.NEW_ENCRYPTION_KEY_HEADER, required = false) final String newEncryptionKeyHeader
+    );
+
     @NotNull
     @DeleteMapping(StorageObjectRequestMappingConstants.DELETE_OBJECT_MAPPING)
     ResponseEntity<?> deleteObject(
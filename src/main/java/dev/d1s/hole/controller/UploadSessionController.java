@@ -0,0 +1,89 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.controller;
+
+import dev.d1s.hole.constant.header.RequestHeaderConstants;
+import dev.d1s.hole.constant.mapping.uploadSession.UploadSessionRequestMappingConstants;
+import dev.d1s.hole.dto.storageObject.StorageObjectDto;
+import dev.d1s.hole.dto.uploadSession.UploadSessionDto;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+import javax.validation.constraints.NotBlank;
+import java.io.InputStream;
+
+@Validated
+public interface UploadSessionController {
+
+    @NotNull
+    @GetMapping(UploadSessionRequestMappingConstants.GET_SESSION_MAPPING)
+    ResponseEntity<UploadSessionDto> getSession(
+            @NotNull
+            @PathVariable
+            @NotBlank final String id
+    );
+
+    @NotNull
+    @PostMapping(UploadSessionRequestMappingConstants.POST_SESSION_MAPPING)
+    ResponseEntity<UploadSessionDto> postSession(
+            @RequestParam final long contentLength,
+            @Nullable
+            @RequestParam(required = false) final String group,
+            @Nullable
+            @RequestHeader(name = RequestHeaderConstants.GROUP_HEADER, required = false) final String groupHeader,
+            @Nullable
+            @RequestParam(required = false) final String name,
+            @Nullable
+            @RequestHeader(name = RequestHeaderConstants.NAME_HEADER, required = false) final String nameHeader
+    );
+
+    @NotNull
+    @PutMapping(
+            value = UploadSessionRequestMappingConstants.PUT_CHUNK_MAPPING,
+            consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE
+    )
+    ResponseEntity<UploadSessionDto> putChunk(
+            @NotNull
+            @PathVariable
+            @NotBlank final String id,
+            @PathVariable final int number,
+            @RequestParam final long offset,
+            @RequestHeader(HttpHeaders.CONTENT_LENGTH) final long length,
+            @NotNull final InputStream content
+    );
+
+    @NotNull
+    @PostMapping(UploadSessionRequestMappingConstants.POST_COMMIT_MAPPING)
+    ResponseEntity<StorageObjectDto> postCommit(
+            @NotNull
+            @PathVariable
+            @NotBlank final String id
+    );
+
+    @NotNull
+    @DeleteMapping(UploadSessionRequestMappingConstants.DELETE_SESSION_MAPPING)
+    ResponseEntity<?> deleteSession(
+            @NotNull
+            @PathVariable
+            @NotBlank final String id
+    );
+}
@@ -16,6 +16,9 @@
 
 package dev.d1s.hole.controller.impl;
 
+import dev.d1s.advice.exception.BadRequestException;
+import dev.d1s.hole.constant.error.EncryptionErrorConstants;
+import dev.d1s.hole.constant.error.storageObject.StorageObjectErrorConstants;
 import dev.d1s.hole.controller.StorageObjectController;
 import dev.d1s.hole.dto.storageObject.StorageObjectDto;
 import dev.d1s.hole.dto.storageObject.StorageObjectUpdateDto;
@@ -24,6 +27,7 @@ import dev.d1s.hole.factory.LocationFactory;
 import dev.d1s.hole.service.storageObject.StorageObjectService;
 import dev.d1s.security.configuration.annotation.Secured;
 import dev.d1s.teabag.dto.DtoConverter;
+import org.apache.tika.utils.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -31,7 +35,9 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.InputStream;
 import java.util.Objects;
 import java.util.Set;
 
@@ -59,9 +65,10 @@ public class StorageObjectControllerImpl implements StorageObjectController {
             @NotNull final String id,
             @Nullable final String contentDisposition,
             @Nullable final String encryptionKey,
+            @NotNull final HttpServletRequest request,
             @NotNull final HttpServletResponse response
     ) {
-        storageObjectService.writeRawObjectToWeb(id, encryptionKey, response, contentDisposition);
+        storageObjectService.writeRawObjectToWeb(id, encryptionKey, request, response, contentDisposition);
     }
 
     @NotNull
@@ -91,6 +98,38 @@ public class StorageObjectControllerImpl implements StorageObjectController {
         ).body(createdObject);
     }
 
+    @NotNull
+    @Secured
+    @Override
+    public ResponseEntity<StorageObjectDto> postObjectStream(
+            @NotNull final InputStream content,
+            @Nullable final String group,
+            @Nullable final String groupHeader,
+            @Nullable final String encryptionKey,
+            @Nullable final String encryptionKeyHeader,
+            @Nullable final String name,
+            @Nullable final String nameHeader
+    ) {
+        final var resolvedGroup = this.resolveParameter(group, groupHeader);
+
+        if (resolvedGroup == null) {
+            throw new BadRequestException(StorageObjectErrorConstants.GROUP_NOT_PRESENT_ERROR);
+        }
+
+        final var createdObject = storageObjectService.createObject(
+                content,
+                resolvedGroup,
+                this.resolveParameter(encryptionKey, encryptionKeyHeader),
+                this.resolveParameter(name, nameHeader)
+        ).dto();
+
+        return ResponseEntity.created(
+                locationFactory.createLocation(
+                        Objects.requireNonNull(createdObject).id()
+                )
+        ).body(createdObject);
+    }
+
     @NotNull
     @Secured
     @Override
@@ -117,6 +156,54 @@ public class StorageObjectControllerImpl implements StorageObjectController {
         return ResponseEntity.noContent().build();
     }
 
+    @NotNull
+    @Secured
+    @Override
+    public ResponseEntity<?> putRawObjectStream(
+            @NotNull final String id,
+            @NotNull final InputStream content,
+            @Nullable final String encryptionKey,
+            @Nullable final String encryptionKeyHeader,
+            @Nullable final String name,
+            @Nullable final String nameHeader
+    ) {
+        storageObjectService.overwriteObject(
+                id,
+                content,
+                this.resolveParameter(encryptionKey, encryptionKeyHeader),
+                this.resolveParameter(name, nameHeader)
+        );
+
+        return ResponseEntity.noContent().build();
+    }
+
+    @NotNull
+    @Secured
+    @Override
+    public ResponseEntity<?> putObjectKey(
+            @NotNull final String id,
+            @Nullable final String encryptionKey,
+            @Nullable final String encryptionKeyHeader,
+            @Nullable final String newEncryptionKey,
+            @Nullable final String newEncryptionKeyHeader
+    ) {
+        final var resolvedEncryptionKey = this.resolveParameter(encryptionKey, encryptionKeyHeader);
+
+        if (StringUtils.isBlank(resolvedEncryptionKey)) {
+            throw new BadRequestException(EncryptionErrorConstants.ENCRYPTION_KEY_NOT_PRESENT_ERROR);
+        }
+
+        final var resolvedNewEncryptionKey = this.resolveParameter(newEncryptionKey, newEncryptionKeyHeader);
+
+        if (StringUtils.isBlank(resolvedNewEncryptionKey)) {
+            throw new BadRequestException(EncryptionErrorConstants.NEW_ENCRYPTION_KEY_NOT_PRESENT_ERROR);
+        }
+
+        storageObjectService.rekeyObject(id, resolvedEncryptionKey, resolvedNewEncryptionKey);
+
+        return ResponseEntity.noContent().build();
+    }
+
     @NotNull
     @Secured
     @Override
@@ -140,4 +227,9 @@ public class StorageObjectControllerImpl implements StorageObjectController {
     public void setStorageObjectUpdateDtoConverter(final DtoConverter<StorageObjectUpdateDto, StorageObject> storageObjectUpdateDtoConverter) {
         this.storageObjectUpdateDtoConverter = storageObjectUpdateDtoConverter;
     }
+
+    @Nullable
+    private String resolveParameter(@Nullable final String requestParameter, @Nullable final String header) {
+        return requestParameter != null ? requestParameter : header;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.controller.impl;
+
+import dev.d1s.advice.exception.BadRequestException;
+import dev.d1s.hole.constant.error.storageObject.StorageObjectErrorConstants;
+import dev.d1s.hole.controller.UploadSessionController;
+import dev.d1s.hole.dto.storageObject.StorageObjectDto;
+import dev.d1s.hole.dto.uploadSession.UploadSessionDto;
+import dev.d1s.hole.factory.LocationFactory;
+import dev.d1s.hole.service.UploadSessionService;
+import dev.d1s.security.configuration.annotation.Secured;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.InputStream;
+
+@RestController
+public class UploadSessionControllerImpl implements UploadSessionController {
+
+    private UploadSessionService uploadSessionService;
+
+    private LocationFactory locationFactory;
+
+    @NotNull
+    @Secured
+    @Override
+    public ResponseEntity<UploadSessionDto> getSession(@NotNull final String id) {
+        return ResponseEntity.ok(
+                uploadSessionService.getSession(id)
+        );
+    }
+
+    @NotNull
+    @Secured
+    @Override
+    public ResponseEntity<UploadSessionDto> postSession(
+            final long contentLength,
+            @Nullable final String group,
+            @Nullable final String groupHeader,
+            @Nullable final String name,
+            @Nullable final String nameHeader
+    ) {
+        final var resolvedGroup = this.resolveParameter(group, groupHeader);
+
+        if (resolvedGroup == null) {
+            throw new BadRequestException(StorageObjectErrorConstants.GROUP_NOT_PRESENT_ERROR);
+        }
+
+        final var createdSession = uploadSessionService.createSession(
+                resolvedGroup,
+                this.resolveParameter(name, nameHeader),
+                contentLength
+        );
+
+        return ResponseEntity.created(
+                locationFactory.createLocation(createdSession.id())
+        ).body(createdSession);
+    }
+
+    @NotNull
+    @Secured
+    @Override
+    public ResponseEntity<UploadSessionDto> putChunk(
+            @NotNull final String id,
+            final int number,
+            final long offset,
+            final long length,
+            @NotNull final InputStream content
+    ) {
+        return ResponseEntity.ok(
+                uploadSessionService.writeChunk(id, number, offset, length, content)
+        );
+    }
+
+    @NotNull
+    @Secured
+    @Override
+    public ResponseEntity<StorageObjectDto> postCommit(@NotNull final String id) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(
+                uploadSessionService.commitSession(id).dto()
+        );
+    }
+
+    @NotNull
+    @Secured
+    @Override
+    public ResponseEntity<?> deleteSession(@NotNull final String id) {
+        uploadSessionService.abortSession(id);
+
+        return ResponseEntity.noContent().build();
+    }
+
+    @Autowired
+    public void setUploadSessionService(final UploadSessionService uploadSessionService) {
+        this.uploadSessionService = uploadSessionService;
+    }
+
+    @Autowired
+    public void setLocationFactory(final LocationFactory locationFactory) {
+        this.locationFactory = locationFactory;
+    }
+
+    @Nullable
+    private String resolveParameter(@Nullable final String requestParameter, @Nullable final String header) {
+        return requestParameter != null ? requestParameter : header;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.entity.blob;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.jetbrains.annotations.NotNull;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.Objects;
+
+@Getter
+@Setter
+@Entity
+@NoArgsConstructor
+@Table(name = "storage_blob")
+public class StorageBlob {
+
+    @Id
+    @NotNull
+    @Column
+    private String digest;
+
+    @Column(nullable = false)
+    private long referenceCount;
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final var that = (StorageBlob) o;
+        return this.digest.equals(that.digest)
+                && this.referenceCount == that.referenceCount;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.digest, this.referenceCount);
+    }
+
+    @Override
+    public String toString() {
+        return "StorageBlob{" +
+                "digest='" + digest + '\'' +
+                ", referenceCount=" + referenceCount +
+                '}';
+    }
+}
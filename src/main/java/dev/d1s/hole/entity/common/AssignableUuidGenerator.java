@@ -0,0 +1,33 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.entity.common;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.UUIDHexGenerator;
+
+import java.io.Serializable;
+
+// keeps the identifier assigned before the entity was saved, so its content can be written first.
+public class AssignableUuidGenerator extends UUIDHexGenerator {
+
+    @Override
+    public Serializable generate(final SharedSessionContractImplementor session, final Object object) {
+        final var id = session.getEntityPersister(null, object).getIdentifier(object, session);
+
+        return id != null ? id : super.generate(session, object);
+    }
+}
@@ -37,7 +37,7 @@ public abstract class Identifiable {
     @Column
     @Nullable
     @GeneratedValue(generator = "system-uuid")
-    @GenericGenerator(name = "system-uuid", strategy = "uuid")
+    @GenericGenerator(name = "system-uuid", strategy = "dev.d1s.hole.entity.common.AssignableUuidGenerator")
     private String id;
 
     @Nullable
@@ -0,0 +1,26 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.entity.storageObject;
+
+public enum EncryptionFormat {
+
+    // a single stream authenticated as a whole, the format of the objects encrypted before the chunked one.
+    JNCRYPTOR,
+
+    // independently sealed chunks, so the content can be read from any position.
+    CHUNKED_GCM
+}
@@ -22,10 +22,12 @@ import dev.d1s.hole.entity.metadata.MetadataProperty;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.DynamicUpdate;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.persistence.*;
+import java.time.Instant;
 import java.util.Objects;
 import java.util.Set;
 
@@ -33,6 +35,7 @@ import java.util.Set;
 @Setter
 @Entity
 @NoArgsConstructor
+@DynamicUpdate
 @Table(name = "storage_object")
 public final class StorageObject extends Identifiable implements MetadataAware {
 
@@ -43,6 +46,18 @@ public final class StorageObject extends Identifiable implements MetadataAware {
     @Column(nullable = false)
     private boolean encrypted;
 
+    // the jncryptor format if absent.
+    @Nullable
+    @Column
+    @Enumerated(EnumType.STRING)
+    private EncryptionFormat encryptionFormat;
+
+    // the random key the content is encrypted with, wrapped by the encryption key.
+    // the content is encrypted with the encryption key itself if absent.
+    @Nullable
+    @Column
+    private String encryptedDataKey;
+
     @Nullable
     @Column(nullable = false)
     private String digest;
@@ -54,6 +69,38 @@ public final class StorageObject extends Identifiable implements MetadataAware {
     @Column(nullable = false)
     private long contentLength;
 
+    @Nullable
+    @Column
+    private String blobDigest;
+
+    @Nullable
+    @Column
+    private String codec;
+
+    // the digest of the stored bytes, which differ from the content when it is compressed or encrypted.
+    @Nullable
+    @Column
+    private String storedDigest;
+
+    // the storage root holding the object's own content, the primary root if absent.
+    @Nullable
+    @Column
+    private String storageRoot;
+
+    // the hot tier if absent.
+    @Nullable
+    @Column
+    @Enumerated(EnumType.STRING)
+    private StorageTier tier;
+
+    // decays over time, so it reflects how often the object was read recently.
+    @Column(nullable = false)
+    private long accessCount;
+
+    @Nullable
+    @Column
+    private Instant lastAccessTime;
+
     @NotNull
     @ManyToOne(cascade = CascadeType.MERGE)
     private StorageObjectGroup group;
@@ -108,9 +155,14 @@ public final class StorageObject extends Identifiable implements MetadataAware {
                 "name='" + name + '\'' +
                 ", group='" + group.getId() + '\'' +
                 ", encrypted=" + encrypted +
+                ", encryptionFormat=" + encryptionFormat +
                 ", digest='" + digest + '\'' +
                 ", contentType='" + contentType + '\'' +
                 ", contentLength='" + contentLength + '\'' +
+                ", blobDigest='" + blobDigest + '\'' +
+                ", codec='" + codec + '\'' +
+                ", storageRoot='" + storageRoot + '\'' +
+                ", tier=" + tier +
                 ", metadata=" + metadata +
                 '}';
     }
@@ -31,4 +31,13 @@ public final class EncryptionException extends HttpStatusException {
                 )
         );
     }
+
+    public EncryptionException(@NotNull final String message) {
+        super(
+                new ErrorResponseData(
+                        HttpStatus.BAD_REQUEST,
+                        message
+                )
+        );
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.factory.impl;
+
+import dev.d1s.hole.factory.StoragePathFactory;
+import dev.d1s.hole.properties.StorageConfigurationProperties;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+@Component
+public class StoragePathFactoryImpl implements StoragePathFactory {
+
+    private static final int SHARD_NAME_LENGTH = 2;
+
+    private static final String BLOB_DIRECTORY = "blobs";
+
+    private StorageConfigurationProperties properties;
+
+    @NotNull
+    @Override
+    public Path createPath(@NotNull final Path root, @NotNull final String id) {
+        var path = root;
+
+        // identifiers share their leading characters, so the shards are derived from the hash of the identifier instead.
+        if (this.isSharded()) {
+            final var hash = DigestUtils.md5Hex(id);
+
+            for (var level = 0; level < properties.getFanOutDepth(); level++) {
+                final var shardStart = level * SHARD_NAME_LENGTH;
+
+                path = path.resolve(hash.substring(shardStart, shardStart + SHARD_NAME_LENGTH));
+            }
+        }
+
+        return path.resolve(id);
+    }
+
+    @NotNull
+    @Override
+    public Path createBlobPath(@NotNull final Path root, @NotNull final String digest) {
+        return this.createPath(this.getBlobDirectory(root), digest);
+    }
+
+    @NotNull
+    @Override
+    public Path getBlobDirectory(@NotNull final Path root) {
+        return root.resolve(BLOB_DIRECTORY);
+    }
+
+    @NotNull
+    @Override
+    public Path createFlatPath(@NotNull final Path root, @NotNull final String id) {
+        return root.resolve(id);
+    }
+
+    @Override
+    public boolean isSharded() {
+        return properties.getFanOutDepth() > 0;
+    }
+
+    @Autowired
+    public void setProperties(final StorageConfigurationProperties properties) {
+        this.properties = properties;
+    }
+}
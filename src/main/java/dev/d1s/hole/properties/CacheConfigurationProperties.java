@@ -0,0 +1,41 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.properties;
+
+import dev.d1s.hole.constant.properties.ConfigurationPropertiesPrefixConstants;
+import lombok.Getter;
+import lombok.Setter;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+
+@Getter
+@Setter
+@Validated
+@ConfigurationProperties(ConfigurationPropertiesPrefixConstants.CACHE)
+public class CacheConfigurationProperties {
+
+    // the total size of the cached contents, zero disables the cache.
+    @NotNull
+    private DataSize maxSize = DataSize.ofBytes(0);
+
+    @NotNull
+    private DataSize maxObjectSize = DataSize.ofMegabytes(1);
+
+    private boolean offHeap = false;
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.properties;
+
+import dev.d1s.hole.constant.properties.ConfigurationPropertiesPrefixConstants;
+import lombok.Getter;
+import lombok.Setter;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Validated
+@ConfigurationProperties(ConfigurationPropertiesPrefixConstants.ENCRYPTION)
+public class EncryptionConfigurationProperties {
+
+    // the number of the derived keys held in memory, zero disables the cache.
+    private long keyCacheSize = 1024L;
+
+    // bounds how long a derived key outlives its last derivation.
+    @NotNull
+    private Duration keyCacheExpiration = Duration.ofMinutes(10L);
+
+    // the plaintext size of the independently sealed chunks, stored with every object so it can be changed.
+    // limited to 4 KB to 16 MB.
+    @NotNull
+    private DataSize chunkSize = DataSize.ofKilobytes(64L);
+
+    // the chunks in flight per transfer, zero keeps the crypto on the request thread.
+    private int pipelineDepth = 2;
+
+    // the threads sealing and opening the chunks, the number of the processors if not positive.
+    private int pipelineThreads = 0;
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.properties;
+
+import dev.d1s.hole.constant.properties.ConfigurationPropertiesPrefixConstants;
+import lombok.Getter;
+import lombok.Setter;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+import java.time.Duration;
+
+@Getter
+@Setter
+@Validated
+@ConfigurationProperties(ConfigurationPropertiesPrefixConstants.RECONCILIATION)
+public class ReconciliationConfigurationProperties {
+
+    @NotNull
+    private Duration interval = Duration.ofDays(1);
+
+    // the orphans are only reported unless enabled.
+    private boolean deleteOrphans = false;
+
+    // the files and the records younger than this may still be waiting for their counterparts.
+    @NotNull
+    private Duration gracePeriod = Duration.ofHours(1);
+
+    @Min(1)
+    private int batchSize = 1000;
+
+    // the checked files and records per second, unlimited if 0.
+    @Min(0)
+    private long rate = 1000;
+}
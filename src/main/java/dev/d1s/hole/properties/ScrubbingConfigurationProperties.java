@@ -0,0 +1,54 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.properties;
+
+import dev.d1s.hole.constant.properties.ConfigurationPropertiesPrefixConstants;
+import lombok.Getter;
+import lombok.Setter;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+import java.time.Duration;
+
+@Getter
+@Setter
+@Validated
+@ConfigurationProperties(ConfigurationPropertiesPrefixConstants.SCRUBBING)
+public class ScrubbingConfigurationProperties {
+
+    private boolean enabled = true;
+
+    // the time between the end of a pass and the start of the next one.
+    @NotNull
+    private Duration interval = Duration.ofDays(30);
+
+    // the bytes read per second by all the workers together, unlimited if 0.
+    @NotNull
+    private DataSize rate = DataSize.ofMegabytes(32);
+
+    // the objects scrubbed concurrently, the number of the distinct disks of the storage roots if 0.
+    @Min(0)
+    private int parallelism = 0;
+
+    @Min(1)
+    private int batchSize = 100;
+
+    private boolean publishEvents = false;
+}
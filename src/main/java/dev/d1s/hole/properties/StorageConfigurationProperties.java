@@ -16,14 +16,28 @@
 
 package dev.d1s.hole.properties;
 
+import dev.d1s.hole.accessor.DurabilityMode;
+import dev.d1s.hole.accessor.StorageBackendType;
+import dev.d1s.hole.constant.compression.CompressionConstants;
 import dev.d1s.hole.constant.properties.ConfigurationPropertiesPrefixConstants;
+import dev.d1s.hole.entity.storageObject.StorageTier;
 import lombok.Getter;
 import lombok.Setter;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.annotation.Validated;
 
+import javax.validation.Valid;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @Getter
 @Setter
@@ -32,6 +46,92 @@ import javax.validation.constraints.NotBlank;
 public class StorageConfigurationProperties {
 
     @NotNull
-    @NotBlank
+    private StorageBackendType backend = StorageBackendType.FILESYSTEM;
+
+    // required by the filesystem backend only, unless the roots are configured.
+    @Nullable
     private String root;
+
+    // the objects are striped across these roots, the legacy root above is used as the first one if present.
+    @NotNull
+    @Valid
+    private List<Root> roots = new ArrayList<>();
+
+    // a root is skipped by the placement while it has less usable space than this.
+    @NotNull
+    private DataSize rootReservedSpace = DataSize.ofGigabytes(1);
+
+    // every object is mirrored to this many roots, the pack segments are never mirrored.
+    @Min(1)
+    private int replicas = 1;
+
+    private boolean rebalance = true;
+
+    private boolean memoryOffHeap = false;
+
+    @Min(0)
+    @Max(8)
+    private int fanOutDepth = 0;
+
+    private boolean deduplication = false;
+
+    // contents up to this size are appended to the pack segments, zero disables packing.
+    @NotNull
+    private DataSize packThreshold = DataSize.ofBytes(0);
+
+    @NotNull
+    private DataSize packSegmentSize = DataSize.ofMegabytes(256);
+
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    private double packGarbageRatio = 0.5;
+
+    @NotNull
+    private Duration packCompactionInterval = Duration.ofMinutes(1);
+
+    @NotNull
+    private DurabilityMode durability = DurabilityMode.NONE;
+
+    @NotNull
+    private Duration groupCommitWindow = Duration.ofMillis(5);
+
+    @Min(1)
+    private int groupCommitMaxBatchSize = 256;
+
+    // the total size of the pooled read-only mappings, zero disables mapping.
+    @NotNull
+    private DataSize mappingPoolSize = DataSize.ofBytes(0);
+
+    @NotNull
+    private DataSize mappingMinObjectSize = DataSize.ofMegabytes(1);
+
+    @NotNull
+    private DataSize mappingMaxObjectSize = DataSize.ofMegabytes(256);
+
+    // idle upload sessions are discarded after this duration.
+    @NotNull
+    private Duration uploadSessionTtl = Duration.ofHours(24);
+
+    @NotNull
+    @NotBlank
+    private String compressionCodec = CompressionConstants.NONE_CODEC;
+
+    @Getter
+    @Setter
+    public static class Root {
+
+        @NotNull
+        @NotBlank
+        private String path;
+
+        // identifies the root in the object records, the path is used if absent.
+        @Nullable
+        private String name;
+
+        @Min(1)
+        private int weight = 1;
+
+        @NotNull
+        private StorageTier tier = StorageTier.HOT;
+    }
 }
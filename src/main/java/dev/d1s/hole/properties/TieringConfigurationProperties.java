@@ -0,0 +1,51 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.properties;
+
+import dev.d1s.hole.constant.properties.ConfigurationPropertiesPrefixConstants;
+import lombok.Getter;
+import lombok.Setter;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+import java.time.Duration;
+
+@Getter
+@Setter
+@Validated
+@ConfigurationProperties(ConfigurationPropertiesPrefixConstants.TIERING)
+public class TieringConfigurationProperties {
+
+    // the tiering runs only if some of the storage roots are cold.
+    @NotNull
+    private Duration interval = Duration.ofHours(1);
+
+    // the objects that weren't read for this long are demoted.
+    @NotNull
+    private Duration coldAfter = Duration.ofDays(7);
+
+    // the access count at which a cold object is promoted, it is halved on every run.
+    @Min(1)
+    private long promotionThreshold = 8;
+
+    private boolean compression = false;
+
+    @NotNull
+    private Duration accessFlushInterval = Duration.ofMinutes(1);
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.repository;
+
+import dev.d1s.hole.entity.blob.StorageBlob;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface StorageBlobRepository extends JpaRepository<StorageBlob, String> {
+
+    @Query(
+            value = "insert into storage_blob (digest, reference_count) values (:digest, 1) " +
+                    "on conflict (digest) do update set reference_count = storage_blob.reference_count + 1 " +
+                    "returning reference_count",
+            nativeQuery = true
+    )
+    Long acquireReference(@Param("digest") final String digest);
+
+    @Query(
+            value = "update storage_blob set reference_count = reference_count - 1 " +
+                    "where digest = :digest " +
+                    "returning reference_count",
+            nativeQuery = true
+    )
+    Long releaseReference(@Param("digest") final String digest);
+
+    @Query("select b.digest from StorageBlob b")
+    Page<String> findDigests(final Pageable pageable);
+
+    @Query("select b.digest from StorageBlob b where b.digest > :after and b.referenceCount > 0 order by b.digest")
+    List<String> findReferencedDigestsAfter(@Param("after") final String after, final Pageable pageable);
+
+    @Query("select b.digest from StorageBlob b where b.digest in :digests")
+    List<String> findExistingDigests(@Param("digests") final Collection<String> digests);
+
+    // holds the row until the end of the transaction, so the reference count can't drop meanwhile.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from StorageBlob b where b.digest = :digest and b.referenceCount > 0")
+    Optional<StorageBlob> lockReferenced(@Param("digest") final String digest);
+
+    @Modifying
+    @Query("delete from StorageBlob b where b.digest = :digest and b.referenceCount <= 0")
+    int deleteUnreferenced(@Param("digest") final String digest);
+}
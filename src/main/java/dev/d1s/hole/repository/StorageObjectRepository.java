@@ -17,9 +17,114 @@
 package dev.d1s.hole.repository;
 
 import dev.d1s.hole.entity.storageObject.StorageObject;
+import dev.d1s.hole.entity.storageObject.StorageTier;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface StorageObjectRepository extends JpaRepository<StorageObject, String> {
+
+    @Query("select o.id from StorageObject o where o.blobDigest is null")
+    Page<String> findUnsharedIds(final Pageable pageable);
+
+    @Query("select o.id from StorageObject o where o.id > :after and o.blobDigest is null order by o.id")
+    List<String> findUnsharedIdsAfter(@Param("after") final String after, final Pageable pageable);
+
+    Optional<StorageObject> findFirstByBlobDigest(final String blobDigest);
+
+    @Query("select o.id from StorageObject o where o.blobDigest = :blobDigest")
+    List<String> findIdsByBlobDigest(@Param("blobDigest") final String blobDigest);
+
+    @Query("select o.id from StorageObject o where o.id in :ids")
+    List<String> findExistingIds(@Param("ids") final Collection<String> ids);
+
+    @Query("select o.id from StorageObject o where o.id > :after and o.creationTime < :createdBefore order by o.id")
+    List<String> findIdsCreatedBefore(
+            @Param("after") final String after,
+            @Param("createdBefore") final Instant createdBefore,
+            final Pageable pageable
+    );
+
+    // the shared contents are not tiered, the objects referencing a blob would all be moved at once.
+    @Query(
+            "select o.id from StorageObject o " +
+                    "where o.id > :after " +
+                    "and o.blobDigest is null " +
+                    "and (o.tier is null or o.tier = dev.d1s.hole.entity.storageObject.StorageTier.HOT) " +
+                    "and coalesce(o.lastAccessTime, o.creationTime) < :deadline " +
+                    "and o.accessCount < :threshold " +
+                    "order by o.id"
+    )
+    List<String> findDemotionCandidates(
+            @Param("after") final String after,
+            @Param("deadline") final Instant deadline,
+            @Param("threshold") final long threshold,
+            final Pageable pageable
+    );
+
+    @Query(
+            "select o.id from StorageObject o " +
+                    "where o.id > :after " +
+                    "and o.blobDigest is null " +
+                    "and o.tier = dev.d1s.hole.entity.storageObject.StorageTier.COLD " +
+                    "and o.accessCount >= :threshold " +
+                    "order by o.id"
+    )
+    List<String> findPromotionCandidates(
+            @Param("after") final String after,
+            @Param("threshold") final long threshold,
+            final Pageable pageable
+    );
+
+    @Modifying
+    @Transactional
+    @Query("update StorageObject o set o.storageRoot = :storageRoot, o.tier = :tier where o.id = :id")
+    int updatePlacement(
+            @Param("id") final String id,
+            @Param("storageRoot") final String storageRoot,
+            @Param("tier") final StorageTier tier
+    );
+
+    // only fills the digests missing since before they were recorded, never overwrites the written ones.
+    @Modifying
+    @Transactional
+    @Query("update StorageObject o set o.storedDigest = :storedDigest where o.id = :id and o.storedDigest is null")
+    int recordStoredDigest(@Param("id") final String id, @Param("storedDigest") final String storedDigest);
+
+    @Modifying
+    @Transactional
+    @Query(
+            "update StorageObject o set o.storedDigest = :storedDigest " +
+                    "where o.blobDigest = :blobDigest and o.storedDigest is null"
+    )
+    int recordBlobStoredDigest(
+            @Param("blobDigest") final String blobDigest,
+            @Param("storedDigest") final String storedDigest
+    );
+
+    @Modifying
+    @Transactional
+    @Query(
+            "update StorageObject o " +
+                    "set o.accessCount = o.accessCount + :count, o.lastAccessTime = :time " +
+                    "where o.id = :id"
+    )
+    int recordAccesses(@Param("id") final String id, @Param("count") final long count, @Param("time") final Instant time);
+
+    // halves the counts on every tiering run, so the old reads weigh less than the recent ones.
+    @Modifying
+    @Transactional
+    @Query("update StorageObject o set o.accessCount = o.accessCount / 2 where o.accessCount > 0")
+    int decayAccessCounts();
 }
\ No newline at end of file
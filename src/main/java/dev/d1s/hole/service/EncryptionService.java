@@ -16,19 +16,58 @@
 
 package dev.d1s.hole.service;
 
+import dev.d1s.hole.accessor.ObjectHandle;
+import dev.d1s.hole.entity.storageObject.EncryptionFormat;
 import dev.d1s.hole.exception.encryption.EncryptionException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.InputStream;
 import java.io.OutputStream;
 
 public interface EncryptionService {
 
+    // a random key for the content, returned wrapped by the encryption key.
     @NotNull
-    OutputStream createEncryptedOutputStream(@NotNull OutputStream out, @NotNull String encryptionKey);
+    String createDataKey(@NotNull String encryptionKey);
 
+    // the data key wrapped by the new encryption key, the content encrypted with it stays as is.
     @NotNull
-    InputStream createDecryptedInputStream(@NotNull InputStream in, @NotNull String encryptionKey);
+    String rewrapDataKey(
+            @NotNull String encryptedDataKey,
+            @NotNull String encryptionKey,
+            @NotNull String newEncryptionKey
+    );
+
+    @NotNull
+    OutputStream createEncryptedOutputStream(
+            @NotNull OutputStream out,
+            @NotNull String encryptionKey,
+            @NotNull String encryptedDataKey
+    );
+
+    @NotNull
+    InputStream createDecryptedInputStream(
+            @NotNull InputStream in,
+            @NotNull String encryptionKey,
+            @Nullable String encryptedDataKey,
+            @Nullable EncryptionFormat encryptionFormat
+    );
+
+    @NotNull
+    InputStream createDecryptedInputStream(
+            @NotNull ObjectHandle handle,
+            @NotNull String encryptionKey,
+            @Nullable String encryptedDataKey,
+            long position,
+            long length
+    );
+
+    // the format the new content is encrypted with.
+    @NotNull
+    EncryptionFormat getEncryptionFormat();
+
+    boolean supportsRange(@Nullable EncryptionFormat encryptionFormat);
 
     @NotNull
     EncryptionException createEncryptionException(@NotNull final Throwable cause);
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service;
+
+import dev.d1s.hole.dto.common.EntityWithDto;
+import dev.d1s.hole.dto.storageObject.StorageObjectDto;
+import dev.d1s.hole.dto.uploadSession.UploadSessionDto;
+import dev.d1s.hole.entity.storageObject.StorageObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InputStream;
+
+public interface UploadSessionService {
+
+    @NotNull
+    UploadSessionDto createSession(
+            @NotNull final String group,
+            @Nullable final String name,
+            final long contentLength
+    );
+
+    @NotNull
+    UploadSessionDto getSession(@NotNull final String id);
+
+    @NotNull
+    UploadSessionDto writeChunk(
+            @NotNull final String id,
+            final int number,
+            final long offset,
+            final long length,
+            @NotNull final InputStream content
+    );
+
+    @NotNull
+    EntityWithDto<StorageObject, StorageObjectDto> commitSession(@NotNull final String id);
+
+    void abortSession(@NotNull final String id);
+}
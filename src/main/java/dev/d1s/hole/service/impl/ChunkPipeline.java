@@ -0,0 +1,118 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Moves the chunk crypto off the request thread. The stored bytes are read or written on a transfer thread
+// of the stream, the chunks are sealed and opened on a pool sized to the processors, and every stream keeps
+// at most the depth of chunks in flight. The stages hand the chunks over in the pooled buffers.
+final class ChunkPipeline {
+
+    private final ExecutorService cryptoExecutor;
+
+    private final ExecutorService transferExecutor;
+
+    private final int depth;
+
+    private final int bufferSize;
+
+    private final BlockingQueue<byte[]> buffers;
+
+    ChunkPipeline(final int cryptoThreads, final int depth, final int bufferSize, final int pooledBuffers) {
+        this.cryptoExecutor = Executors.newFixedThreadPool(cryptoThreads, this.createThreadFactory("hole-crypto-"));
+        this.transferExecutor = Executors.newCachedThreadPool(this.createThreadFactory("hole-crypto-transfer-"));
+        this.depth = depth;
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(pooledBuffers);
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    // the buffers of other sizes are left to the garbage collector.
+    @NotNull
+    byte[] acquireBuffer(final int size) {
+        if (size != bufferSize) {
+            return new byte[size];
+        }
+
+        final var buffer = buffers.poll();
+
+        return buffer != null ? buffer : new byte[size];
+    }
+
+    void releaseBuffer(@NotNull final byte[] buffer) {
+        if (buffer.length == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+
+    @NotNull
+    <T> Future<T> submitCrypto(@NotNull final Callable<T> task) {
+        return cryptoExecutor.submit(task);
+    }
+
+    @NotNull
+    Future<?> submitTransfer(@NotNull final Callable<Void> task) {
+        return transferExecutor.submit(task);
+    }
+
+    // the failure of a stage as it would have been thrown by the stream itself.
+    @NotNull
+    static IOException unwrap(@NotNull final ExecutionException e) {
+        final var cause = e.getCause();
+
+        if (cause instanceof IOException ioException) {
+            return ioException;
+        }
+
+        if (cause instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+
+        if (cause instanceof Error error) {
+            throw error;
+        }
+
+        return new IOException(cause);
+    }
+
+    void shutdown() {
+        cryptoExecutor.shutdownNow();
+        transferExecutor.shutdownNow();
+    }
+
+    private CustomizableThreadFactory createThreadFactory(final String threadNamePrefix) {
+        final var threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+
+        threadFactory.setDaemon(true);
+
+        return threadFactory;
+    }
+}
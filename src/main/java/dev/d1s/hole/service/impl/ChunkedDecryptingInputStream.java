@@ -0,0 +1,355 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import dev.d1s.hole.accessor.ObjectHandle;
+import org.apache.commons.io.IOUtils;
+import org.cryptonode.jncryptor.StreamIntegrityException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Every chunk is authenticated before any of its bytes are returned. Whether a chunk is the last is only
+// known once the next read hits the end, so a byte past every full chunk is read ahead.
+// With the pipeline, the chunks after the first are read by the transfer thread and opened on the crypto pool.
+final class ChunkedDecryptingInputStream extends InputStream {
+
+    private static final long ENQUEUE_TIMEOUT_MILLIS = 100L;
+
+    private final Function<byte[], SecretKey> keyResolver;
+
+    private final ChunkPipeline pipeline;
+
+    private final ObjectHandle handle;
+
+    private final long position;
+
+    private final long length;
+
+    private InputStream in;
+
+    private ChunkedEncryptionFormat format;
+
+    private SecretKey key;
+
+    private Cipher cipher;
+
+    private int sealedChunkSize;
+
+    private byte[] sealedChunk;
+
+    private byte[] chunk;
+
+    private int chunkOffset;
+
+    private int chunkLength;
+
+    private long index;
+
+    // the index of the last chunk to read, the one holding the end of the requested content.
+    private long lastIndex = Long.MAX_VALUE;
+
+    private int carriedByte = -1;
+
+    private boolean lastRead;
+
+    private boolean finished;
+
+    private BlockingQueue<Future<OpenedChunk>> openedChunks;
+
+    private Future<?> reader;
+
+    private volatile boolean closed;
+
+    // reads the whole content from the stored bytes.
+    ChunkedDecryptingInputStream(
+            @NotNull final InputStream in,
+            @NotNull final Function<byte[], SecretKey> keyResolver,
+            @Nullable final ChunkPipeline pipeline
+    ) {
+        this.in = in;
+        this.keyResolver = keyResolver;
+        this.pipeline = pipeline;
+        this.handle = null;
+        this.position = 0L;
+        this.length = -1L;
+    }
+
+    // reads the length of the content from the position, only the chunks holding it are read.
+    ChunkedDecryptingInputStream(
+            @NotNull final ObjectHandle handle,
+            @NotNull final Function<byte[], SecretKey> keyResolver,
+            @Nullable final ChunkPipeline pipeline,
+            final long position,
+            final long length
+    ) {
+        this.handle = handle;
+        this.keyResolver = keyResolver;
+        this.pipeline = pipeline;
+        this.position = position;
+        this.length = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final var b = new byte[1];
+
+        return this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(@NotNull final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (format == null) {
+            this.initialize();
+        }
+
+        while (chunkOffset == chunkLength) {
+            if (finished) {
+                return -1;
+            }
+
+            this.nextChunk();
+        }
+
+        final var count = Math.min(len, chunkLength - chunkOffset);
+
+        System.arraycopy(chunk, chunkOffset, b, off, count);
+        chunkOffset += count;
+
+        return count;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        return IOUtils.skip(this, n);
+    }
+
+    @Override
+    public int available() {
+        return chunkLength - chunkOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        finished = true;
+
+        // the reader gives up on the next hand over, it is awaited so it doesn't read from the closed stream.
+        if (reader != null) {
+            try {
+                reader.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException ignored) {
+            }
+        }
+
+        if (in != null) {
+            in.close();
+        }
+    }
+
+    private void initialize() throws IOException {
+        if (handle == null) {
+            format = ChunkedEncryptionFormat.parse(this.readHeader(in));
+        } else {
+            try (final var headerIn = handle.createInputStream(0L, ChunkedEncryptionFormat.HEADER_SIZE)) {
+                format = ChunkedEncryptionFormat.parse(this.readHeader(headerIn));
+            }
+
+            final var chunkSize = format.getChunkSize();
+
+            index = position / chunkSize;
+            lastIndex = (position + Math.max(length, 1L) - 1L) / chunkSize;
+
+            final var offset = format.getChunkOffset(index);
+
+            in = handle.createInputStream(offset, handle.getSize() - offset);
+        }
+
+        key = keyResolver.apply(format.getSalt());
+
+        sealedChunkSize = format.getChunkSize() + ChunkedEncryptionFormat.TAG_SIZE;
+
+        // the first chunk is always opened right away, so a wrong key fails on the first read.
+        cipher = ChunkedEncryptionFormat.createCipher();
+        sealedChunk = new byte[sealedChunkSize];
+        chunk = new byte[format.getChunkSize()];
+
+        this.openChunkInline();
+
+        // the part of the first chunk before the position is dropped.
+        chunkOffset = (int) Math.min(position % format.getChunkSize(), chunkLength);
+
+        // a single chunk isn't worth handing over.
+        if (pipeline != null && !finished) {
+            openedChunks = new ArrayBlockingQueue<>(pipeline.getDepth());
+            reader = pipeline.submitTransfer(this::readChunks);
+        }
+    }
+
+    private byte[] readHeader(final InputStream headerIn) throws IOException {
+        final var header = new byte[ChunkedEncryptionFormat.HEADER_SIZE];
+
+        if (IOUtils.read(headerIn, header) != header.length) {
+            throw new StreamIntegrityException("Not enough data to read the header.");
+        }
+
+        return header;
+    }
+
+    private void nextChunk() throws IOException {
+        if (reader == null) {
+            this.openChunkInline();
+            return;
+        }
+
+        if (chunk != null) {
+            pipeline.releaseBuffer(chunk);
+        }
+
+        final OpenedChunk opened;
+
+        try {
+            opened = openedChunks.take().get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException();
+        } catch (final ExecutionException e) {
+            chunk = null;
+
+            throw ChunkPipeline.unwrap(e);
+        }
+
+        chunk = opened.buffer();
+        chunkLength = opened.length();
+        chunkOffset = 0;
+        finished = opened.end();
+    }
+
+    private void openChunkInline() throws IOException {
+        final var sealedLength = this.readSealedChunk(sealedChunk);
+
+        chunkLength = format.open(cipher, key, index, lastRead, sealedChunk, sealedLength, chunk);
+        chunkOffset = 0;
+        finished = lastRead || index == lastIndex;
+
+        index++;
+    }
+
+    // the transfer stage, the chunks are handed over in order while being opened on the crypto pool.
+    private Void readChunks() throws InterruptedException {
+        var end = false;
+
+        while (!end && !closed) {
+            final var sealed = pipeline.acquireBuffer(sealedChunkSize);
+
+            Future<OpenedChunk> opened;
+
+            try {
+                final var sealedLength = this.readSealedChunk(sealed);
+                final var chunkIndex = index++;
+                final var last = lastRead;
+
+                end = last || chunkIndex == lastIndex;
+
+                final var chunkEnd = end;
+
+                opened = pipeline.submitCrypto(() -> {
+                    try {
+                        final var output = pipeline.acquireBuffer(sealedChunkSize);
+
+                        final var outputLength = format.open(
+                                ChunkedEncryptionFormat.createCipher(),
+                                key,
+                                chunkIndex,
+                                last,
+                                sealed,
+                                sealedLength,
+                                output
+                        );
+
+                        return new OpenedChunk(output, outputLength, chunkEnd);
+                    } finally {
+                        pipeline.releaseBuffer(sealed);
+                    }
+                });
+            } catch (final IOException | RuntimeException e) {
+                pipeline.releaseBuffer(sealed);
+
+                opened = CompletableFuture.failedFuture(e);
+                end = true;
+            }
+
+            while (!openedChunks.offer(opened, ENQUEUE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    return null;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private int readSealedChunk(final byte[] sealed) throws IOException {
+        var offset = 0;
+
+        if (carriedByte != -1) {
+            sealed[offset++] = (byte) carriedByte;
+            carriedByte = -1;
+        }
+
+        final var sealedLength = offset + IOUtils.read(in, sealed, offset, sealedChunkSize - offset);
+
+        lastRead = true;
+
+        if (sealedLength == sealedChunkSize) {
+            carriedByte = in.read();
+            lastRead = carriedByte == -1;
+        }
+
+        if (sealedLength < ChunkedEncryptionFormat.TAG_SIZE) {
+            throw new StreamIntegrityException("The content is truncated.");
+        }
+
+        return sealedLength;
+    }
+
+    private record OpenedChunk(byte[] buffer, int length, boolean end) {
+    }
+}
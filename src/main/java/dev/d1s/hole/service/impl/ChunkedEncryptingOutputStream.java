@@ -0,0 +1,253 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// A full chunk is sealed only once more content follows, since only the closing one is sealed as the last.
+// With the pipeline, the chunks are sealed on the crypto pool and written by the transfer thread
+// as soon as the content spans more than one chunk.
+final class ChunkedEncryptingOutputStream extends FilterOutputStream {
+
+    private static final long ENQUEUE_TIMEOUT_MILLIS = 100L;
+
+    private final ChunkedEncryptionFormat format;
+
+    private final SecretKey key;
+
+    private final ChunkPipeline pipeline;
+
+    private final int sealedChunkSize;
+
+    private byte[] chunk;
+
+    private Cipher cipher;
+
+    private byte[] sealedChunk;
+
+    private BlockingQueue<Future<SealedChunk>> sealedChunks;
+
+    private Future<?> writer;
+
+    private int chunkLength;
+
+    private long index;
+
+    private boolean closed;
+
+    ChunkedEncryptingOutputStream(
+            @NotNull final OutputStream out,
+            @NotNull final ChunkedEncryptionFormat format,
+            @NotNull final SecretKey key,
+            @Nullable final ChunkPipeline pipeline
+    ) {
+        super(out);
+        this.format = format;
+        this.key = key;
+        this.pipeline = pipeline;
+        this.sealedChunkSize = format.getChunkSize() + ChunkedEncryptionFormat.TAG_SIZE;
+        this.chunk = pipeline != null ? pipeline.acquireBuffer(sealedChunkSize) : new byte[format.getChunkSize()];
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        this.write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(@NotNull final byte[] b, final int off, final int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+
+        final var chunkSize = format.getChunkSize();
+
+        var offset = off;
+        var remaining = len;
+
+        while (remaining > 0) {
+            if (chunkLength == chunkSize) {
+                this.sealChunk(false);
+            }
+
+            final var count = Math.min(remaining, chunkSize - chunkLength);
+
+            System.arraycopy(b, offset, chunk, chunkLength, count);
+
+            chunkLength += count;
+            offset += count;
+            remaining -= count;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // the buffered chunk can't be sealed yet, since it isn't known whether it is the last.
+        // the transfer thread owns the output once it is started.
+        if (writer == null) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            this.sealChunk(true);
+
+            if (writer != null) {
+                this.awaitWriter();
+            }
+
+            out.flush();
+        } catch (final IOException | RuntimeException e) {
+            if (writer != null) {
+                writer.cancel(true);
+            }
+
+            throw e;
+        } finally {
+            out.close();
+        }
+    }
+
+    private void sealChunk(final boolean last) throws IOException {
+        // a single chunk isn't worth handing over.
+        if (pipeline == null || (last && writer == null)) {
+            this.sealChunkInline(last);
+        } else {
+            this.submitChunk(last);
+        }
+    }
+
+    private void sealChunkInline(final boolean last) throws IOException {
+        if (cipher == null) {
+            cipher = ChunkedEncryptionFormat.createCipher();
+            sealedChunk = new byte[sealedChunkSize];
+
+            out.write(format.getHeader());
+        }
+
+        final var length = format.seal(cipher, key, index++, last, chunk, chunkLength, sealedChunk);
+
+        out.write(sealedChunk, 0, length);
+
+        chunkLength = 0;
+    }
+
+    private void submitChunk(final boolean last) throws IOException {
+        if (writer == null) {
+            sealedChunks = new ArrayBlockingQueue<>(pipeline.getDepth());
+            writer = pipeline.submitTransfer(this::writeChunks);
+        }
+
+        final var plainChunk = chunk;
+        final var plainLength = chunkLength;
+        final var chunkIndex = index++;
+
+        final var sealed = pipeline.submitCrypto(() -> {
+            try {
+                final var output = pipeline.acquireBuffer(sealedChunkSize);
+
+                final var length = format.seal(
+                        ChunkedEncryptionFormat.createCipher(),
+                        key,
+                        chunkIndex,
+                        last,
+                        plainChunk,
+                        plainLength,
+                        output
+                );
+
+                return new SealedChunk(output, length, last);
+            } finally {
+                pipeline.releaseBuffer(plainChunk);
+            }
+        });
+
+        try {
+            // the writer only stops early on a failure, which is then rethrown.
+            while (!sealedChunks.offer(sealed, ENQUEUE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (writer.isDone()) {
+                    this.awaitWriter();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException();
+        }
+
+        chunk = last ? null : pipeline.acquireBuffer(sealedChunkSize);
+        chunkLength = 0;
+    }
+
+    private Void writeChunks() throws Exception {
+        out.write(format.getHeader());
+
+        while (true) {
+            final var sealed = sealedChunks.take().get();
+
+            try {
+                out.write(sealed.buffer(), 0, sealed.length());
+            } finally {
+                pipeline.releaseBuffer(sealed.buffer());
+            }
+
+            if (sealed.last()) {
+                return null;
+            }
+        }
+    }
+
+    private void awaitWriter() throws IOException {
+        try {
+            writer.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException();
+        } catch (final ExecutionException e) {
+            throw ChunkPipeline.unwrap(e);
+        }
+
+        if (!closed) {
+            throw new IOException("The chunk writer stopped unexpectedly.");
+        }
+    }
+
+    private record SealedChunk(byte[] buffer, int length, boolean last) {
+    }
+}
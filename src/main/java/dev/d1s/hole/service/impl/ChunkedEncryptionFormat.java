@@ -0,0 +1,191 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import org.cryptonode.jncryptor.StreamIntegrityException;
+import org.jetbrains.annotations.NotNull;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+// The header is the version, the chunk size, the key salt and the nonce prefix. It is followed by the chunks
+// sealed with aes-gcm one by one, each taking the chunk size plus the tag, except for the shorter last one.
+// The nonce of a chunk is the prefix, the chunk index and whether the chunk is the last, so the chunks
+// can't be reordered or dropped, and the header is authenticated along with every chunk.
+final class ChunkedEncryptionFormat {
+
+    private static final int SALT_SIZE = 16;
+
+    private static final int NONCE_PREFIX_SIZE = 7;
+
+    static final int HEADER_SIZE = 1 + Integer.BYTES + SALT_SIZE + NONCE_PREFIX_SIZE;
+
+    static final int TAG_SIZE = 16;
+
+    // bounds the buffers allocated for a chunk, the headers claiming anything else are rejected.
+    static final int MIN_CHUNK_SIZE = 4 * 1024;
+
+    static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private static final byte VERSION = 1;
+
+    private static final int NONCE_SIZE = 12;
+
+    private static final long MAX_CHUNK_COUNT = 0xFFFFFFFFL;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private final byte[] header;
+
+    private final int chunkSize;
+
+    private ChunkedEncryptionFormat(final byte[] header, final int chunkSize) {
+        this.header = header;
+        this.chunkSize = chunkSize;
+    }
+
+    @NotNull
+    static ChunkedEncryptionFormat create(final int chunkSize) {
+        final var salt = new byte[SALT_SIZE];
+        final var noncePrefix = new byte[NONCE_PREFIX_SIZE];
+
+        random.nextBytes(salt);
+        random.nextBytes(noncePrefix);
+
+        final var header = ByteBuffer.allocate(HEADER_SIZE)
+                .put(VERSION)
+                .putInt(chunkSize)
+                .put(salt)
+                .put(noncePrefix)
+                .array();
+
+        return new ChunkedEncryptionFormat(header, chunkSize);
+    }
+
+    @NotNull
+    static ChunkedEncryptionFormat parse(@NotNull final byte[] header) throws IOException {
+        final var buffer = ByteBuffer.wrap(header);
+
+        if (buffer.get() != VERSION) {
+            throw new StreamIntegrityException("Unexpected format version.");
+        }
+
+        final var chunkSize = buffer.getInt();
+
+        if (!isValidChunkSize(chunkSize)) {
+            throw new StreamIntegrityException("Unexpected chunk size.");
+        }
+
+        return new ChunkedEncryptionFormat(header.clone(), chunkSize);
+    }
+
+    static boolean isValidChunkSize(final long chunkSize) {
+        return chunkSize >= MIN_CHUNK_SIZE && chunkSize <= MAX_CHUNK_SIZE;
+    }
+
+    @NotNull
+    static Cipher createCipher() throws IOException {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (final GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @NotNull
+    byte[] getHeader() {
+        return header.clone();
+    }
+
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    @NotNull
+    byte[] getSalt() {
+        return Arrays.copyOfRange(header, 1 + Integer.BYTES, 1 + Integer.BYTES + SALT_SIZE);
+    }
+
+    // the position of the chunk in the stored bytes.
+    long getChunkOffset(final long index) {
+        return HEADER_SIZE + index * (chunkSize + TAG_SIZE);
+    }
+
+    // the sealed chunk is written to the output, the written length is returned.
+    int seal(
+            @NotNull final Cipher cipher,
+            @NotNull final SecretKey key,
+            final long index,
+            final boolean last,
+            @NotNull final byte[] input,
+            final int length,
+            @NotNull final byte[] output
+    ) throws IOException {
+        return this.process(cipher, Cipher.ENCRYPT_MODE, key, index, last, input, length, output);
+    }
+
+    // a tampered, reordered or truncated chunk fails with the cause being AEADBadTagException.
+    int open(
+            @NotNull final Cipher cipher,
+            @NotNull final SecretKey key,
+            final long index,
+            final boolean last,
+            @NotNull final byte[] input,
+            final int length,
+            @NotNull final byte[] output
+    ) throws IOException {
+        return this.process(cipher, Cipher.DECRYPT_MODE, key, index, last, input, length, output);
+    }
+
+    private int process(
+            final Cipher cipher,
+            final int mode,
+            final SecretKey key,
+            final long index,
+            final boolean last,
+            final byte[] input,
+            final int length,
+            final byte[] output
+    ) throws IOException {
+        if (index > MAX_CHUNK_COUNT) {
+            throw new IOException("Too many chunks.");
+        }
+
+        final var nonce = ByteBuffer.allocate(NONCE_SIZE)
+                .put(header, HEADER_SIZE - NONCE_PREFIX_SIZE, NONCE_PREFIX_SIZE)
+                .putInt((int) index)
+                .put((byte) (last ? 1 : 0))
+                .array();
+
+        try {
+            cipher.init(mode, key, new GCMParameterSpec(TAG_SIZE * Byte.SIZE, nonce));
+            cipher.updateAAD(header);
+
+            return cipher.doFinal(input, 0, length, output, 0);
+        } catch (final GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import dev.d1s.hole.codec.CompressionCodec;
+import dev.d1s.hole.constant.compression.CompressionConstants;
+import dev.d1s.hole.properties.StorageConfigurationProperties;
+import dev.d1s.hole.service.CompressionService;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.mime.MediaTypeRegistry;
+import org.apache.tika.mime.MimeTypes;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+@Service
+public class CompressionServiceImpl implements CompressionService, InitializingBean {
+
+    private final MediaTypeRegistry mediaTypeRegistry = MimeTypes.getDefaultMimeTypes().getMediaTypeRegistry();
+
+    private final Map<String, CompressionCodec> codecs = new HashMap<>();
+
+    private List<CompressionCodec> availableCodecs;
+
+    private StorageConfigurationProperties properties;
+
+    @Override
+    public void afterPropertiesSet() {
+        for (final var codec : availableCodecs) {
+            if (codecs.putIfAbsent(codec.getName(), codec) != null) {
+                throw new IllegalStateException("Duplicate compression codec: " + codec.getName());
+            }
+        }
+
+        // fail on startup rather than on the first upload.
+        this.getCodec(properties.getCompressionCodec());
+    }
+
+    @Nullable
+    @Override
+    public CompressionCodec selectCodec(@NotNull final String contentType) {
+        final var codec = this.getCodec(properties.getCompressionCodec());
+
+        if (codec == null || this.isCompressed(contentType)) {
+            return null;
+        }
+
+        return codec;
+    }
+
+    @Nullable
+    @Override
+    public CompressionCodec getCodec(@Nullable final String name) {
+        if (name == null || name.equals(CompressionConstants.NONE_CODEC)) {
+            return null;
+        }
+
+        final var codec = codecs.get(name);
+
+        if (codec == null) {
+            throw new IllegalStateException("Unknown compression codec: " + name);
+        }
+
+        return codec;
+    }
+
+    @Override
+    public boolean isCompressible(@NotNull final String contentType) {
+        return !this.isCompressed(contentType);
+    }
+
+    @Override
+    public boolean isEncodingAccepted(@Nullable final String acceptEncoding, @NotNull final CompressionCodec codec) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        final var contentEncoding = codec.getContentEncoding();
+
+        for (final var element : acceptEncoding.split(",")) {
+            final var parameters = element.split(";");
+            final var coding = parameters[0].trim();
+
+            if (!coding.equalsIgnoreCase(contentEncoding) && !coding.equals("*")) {
+                continue;
+            }
+
+            return !isZeroQuality(parameters);
+        }
+
+        return false;
+    }
+
+    private boolean isCompressed(@NotNull final String contentType) {
+        final var type = contentType.toLowerCase(Locale.ROOT);
+
+        if (CompressionConstants.COMPRESSED_CONTENT_TYPES.contains(type)) {
+            return true;
+        }
+
+        // svg and friends are text underneath.
+        if (!type.endsWith("+xml")) {
+            for (final var prefix : CompressionConstants.COMPRESSED_CONTENT_TYPE_PREFIXES) {
+                if (type.startsWith(prefix)) {
+                    return true;
+                }
+            }
+        }
+
+        // office documents, jars, epubs and so on are zip archives.
+        final var mediaType = MediaType.parse(type);
+
+        return mediaType != null && mediaTypeRegistry.isInstanceOf(mediaType, MediaType.APPLICATION_ZIP);
+    }
+
+    private static boolean isZeroQuality(@NotNull final String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            final var parameter = parameters[i].trim();
+
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) <= 0.0;
+                } catch (final NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Autowired
+    public void setAvailableCodecs(final List<CompressionCodec> availableCodecs) {
+        this.availableCodecs = availableCodecs;
+    }
+
+    @Autowired
+    public void setProperties(final StorageConfigurationProperties properties) {
+        this.properties = properties;
+    }
+}
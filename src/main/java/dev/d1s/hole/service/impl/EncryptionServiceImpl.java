@@ -16,43 +16,416 @@
 
 package dev.d1s.hole.service.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.d1s.hole.accessor.ObjectHandle;
+import dev.d1s.hole.constant.cache.CacheNameConstants;
+import dev.d1s.hole.constant.error.EncryptionErrorConstants;
+import dev.d1s.hole.entity.storageObject.EncryptionFormat;
 import dev.d1s.hole.exception.encryption.EncryptionException;
+import dev.d1s.hole.properties.EncryptionConfigurationProperties;
 import dev.d1s.hole.service.EncryptionService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.cryptonode.jncryptor.AES256JNCryptor;
 import org.cryptonode.jncryptor.AES256JNCryptorInputStream;
-import org.cryptonode.jncryptor.AES256JNCryptorOutputStream;
 import org.cryptonode.jncryptor.CryptorException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.function.Function;
 
 @Service
-public class EncryptionServiceImpl implements EncryptionService {
+public class EncryptionServiceImpl implements EncryptionService, InitializingBean, DisposableBean {
+
+    private static final String KEY_ALGORITHM = "AES";
+
+    private static final int DATA_KEY_SIZE = 256;
+
+    private static final byte WRAPPING_VERSION = 1;
+
+    private static final int WRAPPING_SALT_SIZE = 16;
+
+    private static final int WRAPPING_NONCE_SIZE = 12;
+
+    private static final int WRAPPING_TAG_SIZE = 128;
+
+    private static final String WRAPPING_TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final SecureRandom random = new SecureRandom();
+
+    // a sealed and an opened chunk per a chunk in flight, twice for the streams handing over.
+    private static final int PIPELINE_BUFFERS_PER_SLOT = 4;
+
+    private final AES256JNCryptor cryptor = new AES256JNCryptor();
+
+    private EncryptionConfigurationProperties properties;
+
+    private MeterRegistry meterRegistry;
+
+    // the pbkdf2 keys by the salt they were derived with, so the repeated transfers skip the key stretching.
+    private Cache<DerivedKeyCacheKey, DerivedKey> keyCache;
+
+    private ChunkPipeline pipeline;
 
     @NotNull
     @Override
-    public OutputStream createEncryptedOutputStream(@NotNull OutputStream out, @NotNull String encryptionKey) {
+    public String createDataKey(@NotNull final String encryptionKey) {
+        final SecretKey dataKey;
+
         try {
-            return new AES256JNCryptorOutputStream(out, encryptionKey.toCharArray());
-        } catch (final CryptorException e) {
-            throw new EncryptionException(e);
+            final var keyGenerator = KeyGenerator.getInstance(KEY_ALGORITHM);
+
+            keyGenerator.init(DATA_KEY_SIZE, random);
+
+            dataKey = keyGenerator.generateKey();
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
         }
+
+        return this.wrapDataKey(dataKey, encryptionKey);
+    }
+
+    @NotNull
+    @Override
+    public String rewrapDataKey(
+            @NotNull final String encryptedDataKey,
+            @NotNull final String encryptionKey,
+            @NotNull final String newEncryptionKey
+    ) {
+        return this.wrapDataKey(this.unwrapDataKey(encryptedDataKey, encryptionKey), newEncryptionKey);
     }
 
+    // the salt in the header is left unused, the content is encrypted with the data key.
     @NotNull
     @Override
-    public InputStream createDecryptedInputStream(@NotNull InputStream in, @NotNull String encryptionKey) {
+    public OutputStream createEncryptedOutputStream(
+            @NotNull final OutputStream out,
+            @NotNull final String encryptionKey,
+            @NotNull final String encryptedDataKey
+    ) {
+        return new ChunkedEncryptingOutputStream(
+                out,
+                ChunkedEncryptionFormat.create((int) properties.getChunkSize().toBytes()),
+                this.unwrapDataKey(encryptedDataKey, encryptionKey),
+                pipeline
+        );
+    }
+
+    @NotNull
+    @Override
+    public InputStream createDecryptedInputStream(
+            @NotNull final InputStream in,
+            @NotNull final String encryptionKey,
+            @Nullable final String encryptedDataKey,
+            @Nullable final EncryptionFormat encryptionFormat
+    ) {
+        if (encryptionFormat == EncryptionFormat.CHUNKED_GCM) {
+            return new ChunkedDecryptingInputStream(
+                    in,
+                    this.createKeyResolver(encryptionKey, encryptedDataKey),
+                    pipeline
+            );
+        }
+
+        final var passwordHash = DigestUtils.sha256Hex(encryptionKey);
+
         try {
-            return new AES256JNCryptorInputStream(in, encryptionKey.toCharArray());
+            if (keyCache == null) {
+                return new AES256JNCryptorInputStream(in, encryptionKey.toCharArray());
+            }
+
+            return new PasswordDecryptingInputStream(
+                    in,
+                    salt -> this.getKey(encryptionKey, passwordHash, salt)
+            );
         } catch (final RuntimeException e) {
             throw new EncryptionException(e);
         }
     }
 
+    @NotNull
+    @Override
+    public InputStream createDecryptedInputStream(
+            @NotNull final ObjectHandle handle,
+            @NotNull final String encryptionKey,
+            @Nullable final String encryptedDataKey,
+            final long position,
+            final long length
+    ) {
+        return new BoundedInputStream(
+                new ChunkedDecryptingInputStream(
+                        handle,
+                        this.createKeyResolver(encryptionKey, encryptedDataKey),
+                        pipeline,
+                        position,
+                        length
+                ),
+                length
+        );
+    }
+
+    @NotNull
+    @Override
+    public EncryptionFormat getEncryptionFormat() {
+        return EncryptionFormat.CHUNKED_GCM;
+    }
+
+    @Override
+    public boolean supportsRange(@Nullable final EncryptionFormat encryptionFormat) {
+        // the jncryptor content is a single cbc stream authenticated as a whole.
+        return encryptionFormat == EncryptionFormat.CHUNKED_GCM;
+    }
+
     @NotNull
     @Override
     public EncryptionException createEncryptionException(@NotNull Throwable cause) {
         return new EncryptionException(cause);
     }
+
+    @Override
+    public void afterPropertiesSet() {
+        final var chunkSize = properties.getChunkSize();
+
+        // fail on startup rather than on the first upload.
+        if (!ChunkedEncryptionFormat.isValidChunkSize(chunkSize.toBytes())) {
+            throw new IllegalStateException("The encryption chunk size must be between "
+                    + ChunkedEncryptionFormat.MIN_CHUNK_SIZE + " and " + ChunkedEncryptionFormat.MAX_CHUNK_SIZE
+                    + " bytes: " + chunkSize);
+        }
+
+        final var depth = properties.getPipelineDepth();
+
+        if (depth > 0) {
+            final var threads = properties.getPipelineThreads() > 0
+                    ? properties.getPipelineThreads()
+                    : Runtime.getRuntime().availableProcessors();
+
+            // the buffers fit the sealed chunks of the configured size, the chunks of the older objects
+            // might be sized differently.
+            pipeline = new ChunkPipeline(
+                    threads,
+                    depth,
+                    (int) properties.getChunkSize().toBytes() + ChunkedEncryptionFormat.TAG_SIZE,
+                    threads * depth * PIPELINE_BUFFERS_PER_SLOT
+            );
+        }
+
+        final var maxSize = properties.getKeyCacheSize();
+
+        if (maxSize <= 0L) {
+            return;
+        }
+
+        // the expiration is counted from the derivation, so a frequently used key doesn't stay in memory forever.
+        keyCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(properties.getKeyCacheExpiration())
+                .<DerivedKeyCacheKey, DerivedKey>removalListener((cacheKey, key, cause) -> {
+                    if (key != null) {
+                        key.destroy();
+                    }
+                })
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, keyCache, CacheNameConstants.DERIVED_KEY_CACHE);
+    }
+
+    @Override
+    public void destroy() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    @Autowired
+    public void setProperties(final EncryptionConfigurationProperties properties) {
+        this.properties = properties;
+    }
+
+    @Autowired
+    public void setMeterRegistry(final MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    // the data key is unwrapped right away, so a wrong encryption key fails before the content is read.
+    // the older content is encrypted with the key derived from the encryption key and the salt in its header.
+    private Function<byte[], SecretKey> createKeyResolver(
+            final String encryptionKey,
+            final String encryptedDataKey
+    ) {
+        if (encryptedDataKey != null) {
+            final var dataKey = this.unwrapDataKey(encryptedDataKey, encryptionKey);
+
+            return salt -> dataKey;
+        }
+
+        final var passwordHash = DigestUtils.sha256Hex(encryptionKey);
+
+        return salt -> this.getKey(encryptionKey, passwordHash, salt);
+    }
+
+    // [version][salt][nonce][the data key sealed with aes-gcm], the wrapping key is derived from the encryption key
+    // and the salt, so it comes from the key cache when the object is read again.
+    private String wrapDataKey(final SecretKey dataKey, final String encryptionKey) {
+        final var salt = new byte[WRAPPING_SALT_SIZE];
+        final var nonce = new byte[WRAPPING_NONCE_SIZE];
+
+        random.nextBytes(salt);
+        random.nextBytes(nonce);
+
+        final var header = ByteBuffer.allocate(1 + WRAPPING_SALT_SIZE)
+                .put(WRAPPING_VERSION)
+                .put(salt)
+                .array();
+
+        try {
+            final var cipher = Cipher.getInstance(WRAPPING_TRANSFORMATION);
+
+            cipher.init(
+                    Cipher.ENCRYPT_MODE,
+                    this.getKey(encryptionKey, DigestUtils.sha256Hex(encryptionKey), salt),
+                    new GCMParameterSpec(WRAPPING_TAG_SIZE, nonce)
+            );
+
+            cipher.updateAAD(header);
+
+            final var wrappedKey = cipher.doFinal(dataKey.getEncoded());
+
+            return Hex.encodeHexString(
+                    ByteBuffer.allocate(header.length + nonce.length + wrappedKey.length)
+                            .put(header)
+                            .put(nonce)
+                            .put(wrappedKey)
+                            .array()
+            );
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private SecretKey unwrapDataKey(final String encryptedDataKey, final String encryptionKey) {
+        final ByteBuffer buffer;
+
+        try {
+            buffer = ByteBuffer.wrap(Hex.decodeHex(encryptedDataKey));
+        } catch (final DecoderException e) {
+            throw new IllegalStateException(e);
+        }
+
+        if (buffer.remaining() <= 1 + WRAPPING_SALT_SIZE + WRAPPING_NONCE_SIZE || buffer.get() != WRAPPING_VERSION) {
+            throw new IllegalStateException("Unexpected data key format.");
+        }
+
+        final var salt = new byte[WRAPPING_SALT_SIZE];
+        final var nonce = new byte[WRAPPING_NONCE_SIZE];
+
+        buffer.get(salt).get(nonce);
+
+        final var wrappedKey = new byte[buffer.remaining()];
+
+        buffer.get(wrappedKey);
+
+        final byte[] dataKey;
+
+        try {
+            final var cipher = Cipher.getInstance(WRAPPING_TRANSFORMATION);
+
+            cipher.init(
+                    Cipher.DECRYPT_MODE,
+                    this.getKey(encryptionKey, DigestUtils.sha256Hex(encryptionKey), salt),
+                    new GCMParameterSpec(WRAPPING_TAG_SIZE, nonce)
+            );
+
+            cipher.updateAAD(
+                    ByteBuffer.allocate(1 + WRAPPING_SALT_SIZE)
+                            .put(WRAPPING_VERSION)
+                            .put(salt)
+                            .array()
+            );
+
+            dataKey = cipher.doFinal(wrappedKey);
+        } catch (final AEADBadTagException e) {
+            throw new EncryptionException(EncryptionErrorConstants.WRONG_ENCRYPTION_KEY_ERROR);
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+
+        try {
+            return new SecretKeySpec(dataKey, KEY_ALGORITHM);
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+    }
+
+    private SecretKey getKey(final String encryptionKey, final String passwordHash, final byte[] salt) {
+        if (keyCache == null) {
+            return this.deriveKey(encryptionKey, salt);
+        }
+
+        final var key = keyCache.get(
+                new DerivedKeyCacheKey(passwordHash, Hex.encodeHexString(salt)),
+                it -> new DerivedKey(this.deriveKey(encryptionKey, salt).getEncoded())
+        );
+
+        final var secretKey = key.toSecretKey();
+
+        // the key might have been evicted and destroyed meanwhile.
+        return secretKey != null ? secretKey : this.deriveKey(encryptionKey, salt);
+    }
+
+    private SecretKey deriveKey(final String encryptionKey, final byte[] salt) {
+        try {
+            return cryptor.keyForPassword(encryptionKey.toCharArray(), salt);
+        } catch (final CryptorException e) {
+            throw new EncryptionException(e);
+        }
+    }
+
+    private record DerivedKeyCacheKey(@NotNull String passwordHash, @NotNull String salt) {
+    }
+
+    private static final class DerivedKey {
+
+        private byte[] key;
+
+        private DerivedKey(@NotNull final byte[] key) {
+            this.key = key;
+        }
+
+        @Nullable
+        private synchronized SecretKey toSecretKey() {
+            return key != null ? new SecretKeySpec(key, KEY_ALGORITHM) : null;
+        }
+
+        private synchronized void destroy() {
+            if (key == null) {
+                return;
+            }
+
+            Arrays.fill(key, (byte) 0);
+            key = null;
+        }
+    }
 }
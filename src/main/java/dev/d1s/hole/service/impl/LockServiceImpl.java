@@ -26,12 +26,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @Service
 public class LockServiceImpl implements LockService {
@@ -40,47 +39,57 @@ public class LockServiceImpl implements LockService {
 
     private static final Logger log = LogManager.getLogger();
 
-    private final Map<String, Lock> lockMap = new ConcurrentHashMap<>();
+    // only the locks being held or waited for are kept, an entry is removed with its last reference.
+    private final ConcurrentHashMap<String, LockEntry> lockMap = new ConcurrentHashMap<>();
 
     private LockServiceImpl lockServiceImpl;
 
     @Override
-    public void lock(@NotNull String id) {
-        try {
-            if (!this.getLock(id).tryLock(LOCK_TIMEOUT, TimeUnit.SECONDS)) {
-                throw new StorageObjectLockedException(id);
-            }
+    public void lockRead(@NotNull String id) {
+        this.acquire(id, false);
 
-            log.debug("Locked object {}", id);
-        } catch (final InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        log.debug("Locked object {} for reading", id);
+    }
+
+    @Override
+    public void lockRead(@NotNull StorageObject object) {
+        lockServiceImpl.lockRead(Objects.requireNonNull(object.getId()));
     }
 
     @Override
-    public void lock(@NotNull StorageObject object) {
-        lockServiceImpl.lock(Objects.requireNonNull(object.getId()));
+    public void unlockRead(@NotNull String id) {
+        this.release(id, false);
+
+        log.debug("Unlocked object {} for reading", id);
     }
 
     @Override
-    public void unlock(@NotNull String id) {
-        this.getLockOrThrow(id).unlock();
+    public void unlockRead(@NotNull StorageObject object) {
+        lockServiceImpl.unlockRead(Objects.requireNonNull(object.getId()));
+    }
 
-        log.debug("Unlocked object {}", id);
+    @Override
+    public void lockWrite(@NotNull String id) {
+        this.acquire(id, true);
+
+        log.debug("Locked object {} for writing", id);
     }
 
     @Override
-    public void unlock(@NotNull StorageObject object) {
-        lockServiceImpl.unlock(Objects.requireNonNull(object.getId()));
+    public void lockWrite(@NotNull StorageObject object) {
+        lockServiceImpl.lockWrite(Objects.requireNonNull(object.getId()));
     }
 
     @Override
-    public void removeLock(@NotNull final StorageObject object) {
-        final var objectId = Objects.requireNonNull(object.getId());
+    public void unlockWrite(@NotNull String id) {
+        this.release(id, true);
 
-        lockMap.remove(objectId);
+        log.debug("Unlocked object {} for writing", id);
+    }
 
-        log.debug("Removed lock for object {}", objectId);
+    @Override
+    public void unlockWrite(@NotNull StorageObject object) {
+        lockServiceImpl.unlockWrite(Objects.requireNonNull(object.getId()));
     }
 
     @Lazy
@@ -89,24 +98,62 @@ public class LockServiceImpl implements LockService {
         this.lockServiceImpl = lockServiceImpl;
     }
 
-    private Lock getLock(final String id) {
-        var lock = lockMap.get(id);
+    private void acquire(final String id, final boolean write) {
+        final var entry = this.retain(id);
 
-        if (lock == null) {
-            lock = new ReentrantLock();
-            lockMap.put(id, lock);
-        }
+        final var lock = write ? entry.lock.writeLock() : entry.lock.readLock();
+
+        try {
+            if (!lock.tryLock(LOCK_TIMEOUT, TimeUnit.SECONDS)) {
+                throw new StorageObjectLockedException(id);
+            }
+        } catch (final InterruptedException e) {
+            this.dereference(id);
+
+            throw new RuntimeException(e);
+        } catch (final RuntimeException e) {
+            this.dereference(id);
 
-        return lock;
+            throw e;
+        }
     }
 
-    private Lock getLockOrThrow(final String id) {
-        var lock = lockMap.get(id);
+    private void release(final String id, final boolean write) {
+        final var entry = lockMap.get(id);
 
-        if (lock == null) {
+        if (entry == null) {
             throw new IllegalArgumentException();
         }
 
-        return lock;
+        if (write) {
+            entry.lock.writeLock().unlock();
+        } else {
+            entry.lock.readLock().unlock();
+        }
+
+        // the reference is dropped only once the lock is released, so the entry can't be replaced while held.
+        this.dereference(id);
+    }
+
+    // the reference count is only changed within the atomic map operations.
+    private LockEntry retain(final String id) {
+        return lockMap.compute(id, (key, entry) -> {
+            final var retainedEntry = entry != null ? entry : new LockEntry();
+
+            retainedEntry.references++;
+
+            return retainedEntry;
+        });
+    }
+
+    private void dereference(final String id) {
+        lockMap.computeIfPresent(id, (key, entry) -> --entry.references == 0 ? null : entry);
+    }
+
+    private static final class LockEntry {
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        private int references;
     }
 }
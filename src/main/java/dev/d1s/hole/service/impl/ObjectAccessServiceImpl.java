@@ -0,0 +1,141 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import dev.d1s.hole.accessor.ObjectStorageAccessor;
+import dev.d1s.hole.entity.storageObject.StorageObject;
+import dev.d1s.hole.properties.TieringConfigurationProperties;
+import dev.d1s.hole.repository.StorageObjectRepository;
+import dev.d1s.hole.service.ObjectAccessService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+// The reads are counted in memory and written in batches, so serving an object never waits for the database.
+// A read racing with the flush of its object may be lost, the counts only have to be roughly right.
+@Service
+public class ObjectAccessServiceImpl implements ObjectAccessService, InitializingBean, DisposableBean {
+
+    private static final Logger log = LogManager.getLogger();
+
+    private final Map<String, Access> accesses = new ConcurrentHashMap<>();
+
+    private ObjectStorageAccessor objectStorageAccessor;
+
+    private StorageObjectRepository storageObjectRepository;
+
+    private TieringConfigurationProperties properties;
+
+    private TaskScheduler taskScheduler;
+
+    @Nullable
+    private ScheduledFuture<?> flushing;
+
+    @Override
+    public void recordAccess(@NotNull final StorageObject object) {
+        // the shared contents are not tiered.
+        if (!objectStorageAccessor.supportsTiering() || object.getBlobDigest() != null) {
+            return;
+        }
+
+        final var access = accesses.computeIfAbsent(Objects.requireNonNull(object.getId()), id -> new Access());
+
+        access.count.increment();
+        access.time = Instant.now();
+    }
+
+    @Override
+    public void flush() {
+        var flushed = 0;
+
+        for (final var id : accesses.keySet()) {
+            final var access = accesses.remove(id);
+
+            if (access == null) {
+                continue;
+            }
+
+            try {
+                storageObjectRepository.recordAccesses(id, access.count.sum(), access.time);
+
+                flushed++;
+            } catch (final RuntimeException e) {
+                log.warn("Failed to record the accesses of {}: {}", id, e.getMessage());
+            }
+        }
+
+        if (flushed > 0) {
+            log.debug("Recorded the accesses of {} objects", flushed);
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (objectStorageAccessor.supportsTiering()) {
+            this.flushing = taskScheduler.scheduleWithFixedDelay(this::flush, properties.getAccessFlushInterval());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (flushing != null) {
+            flushing.cancel(false);
+
+            this.flush();
+        }
+    }
+
+    @Autowired
+    public void setObjectStorageAccessor(final ObjectStorageAccessor objectStorageAccessor) {
+        this.objectStorageAccessor = objectStorageAccessor;
+    }
+
+    @Autowired
+    public void setStorageObjectRepository(final StorageObjectRepository storageObjectRepository) {
+        this.storageObjectRepository = storageObjectRepository;
+    }
+
+    @Autowired
+    public void setProperties(final TieringConfigurationProperties properties) {
+        this.properties = properties;
+    }
+
+    @Autowired
+    public void setTaskScheduler(final TaskScheduler taskScheduler) {
+        this.taskScheduler = taskScheduler;
+    }
+
+    private static final class Access {
+
+        private final LongAdder count = new LongAdder();
+
+        private volatile Instant time;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.d1s.hole.accessor.ObjectHandle;
+import dev.d1s.hole.accessor.ObjectStorageAccessor;
+import dev.d1s.hole.accessor.impl.MemoryObjectHandle;
+import dev.d1s.hole.constant.cache.CacheNameConstants;
+import dev.d1s.hole.entity.storageObject.StorageObject;
+import dev.d1s.hole.properties.CacheConfigurationProperties;
+import dev.d1s.hole.service.ObjectCacheService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+// Holds whole stored contents of the small unencrypted objects, so the popular ones are served
+// without touching the backend. The stored representation is cached, so the compressed objects
+// can still be sent as they are.
+@Service
+public class ObjectCacheServiceImpl implements ObjectCacheService, InitializingBean {
+
+    private static final Logger log = LogManager.getLogger();
+
+    // the contents are cached in single buffers, which are limited to 2 GiB.
+    private static final long MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
+    private CacheConfigurationProperties properties;
+
+    private ObjectStorageAccessor objectStorageAccessor;
+
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, ByteBuffer> cache;
+
+    @NotNull
+    @Override
+    public ObjectHandle openObject(@NotNull final StorageObject object) {
+        if (cache == null || object.isEncrypted()) {
+            return objectStorageAccessor.openObject(object);
+        }
+
+        final var id = Objects.requireNonNull(object.getId());
+
+        final var cachedContent = cache.getIfPresent(id);
+
+        if (cachedContent != null) {
+            return new MemoryObjectHandle(cachedContent);
+        }
+
+        final var handle = objectStorageAccessor.openObject(object);
+
+        if (handle.getSize() > Math.min(properties.getMaxObjectSize().toBytes(), MAX_BUFFER_SIZE)) {
+            return handle;
+        }
+
+        final ByteBuffer content;
+
+        try {
+            content = this.readContent(handle);
+        } finally {
+            objectStorageAccessor.closeObject(handle);
+        }
+
+        cache.put(id, content);
+
+        log.debug("Cached the content of {}", id);
+
+        return new MemoryObjectHandle(content);
+    }
+
+    @Override
+    public void invalidate(@NotNull final StorageObject object) {
+        if (cache != null) {
+            cache.invalidate(Objects.requireNonNull(object.getId()));
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        final var maxSize = properties.getMaxSize().toBytes();
+
+        if (maxSize <= 0L) {
+            return;
+        }
+
+        // caffeine evicts by the window TinyLFU policy, so a burst of one-off downloads
+        // doesn't flush the frequently requested objects.
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize)
+                .<String, ByteBuffer>weigher((id, content) -> content.capacity())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CacheNameConstants.OBJECT_CONTENT_CACHE);
+
+        Gauge.builder("cache.hit.ratio", cache, it -> it.stats().hitRate())
+                .tag("cache", CacheNameConstants.OBJECT_CONTENT_CACHE)
+                .register(meterRegistry);
+    }
+
+    @Autowired
+    public void setProperties(final CacheConfigurationProperties properties) {
+        this.properties = properties;
+    }
+
+    @Autowired
+    public void setObjectStorageAccessor(final ObjectStorageAccessor objectStorageAccessor) {
+        this.objectStorageAccessor = objectStorageAccessor;
+    }
+
+    @Autowired
+    public void setMeterRegistry(final MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    private ByteBuffer readContent(final ObjectHandle handle) {
+        final var size = (int) handle.getSize();
+
+        final var content = properties.isOffHeap()
+                ? ByteBuffer.allocateDirect(size)
+                : ByteBuffer.allocate(size);
+
+        final var in = handle.createInputStream();
+
+        try {
+            final var buffer = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
+
+            int read;
+
+            while (content.hasRemaining()
+                    && (read = in.read(buffer, 0, Math.min(buffer.length, content.remaining()))) != -1) {
+                content.put(buffer, 0, read);
+            }
+        } catch (final IOException e) {
+            objectStorageAccessor.processIoException(e);
+        } finally {
+            objectStorageAccessor.closeInputStream(in);
+        }
+
+        return content.flip().asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import org.apache.commons.io.IOUtils;
+import org.cryptonode.jncryptor.StreamIntegrityException;
+import org.jetbrains.annotations.NotNull;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.function.Function;
+
+// Reads the password-based JNCryptor v3 format with the keys supplied for its salts, so they can be
+// derived once and reused. The jncryptor streams built from the keys expect the key-based header,
+// which the hmac of the password-based content doesn't cover.
+final class PasswordDecryptingInputStream extends FilterInputStream {
+
+    private static final byte VERSION = 3;
+
+    private static final byte PASSWORD_OPTIONS = 1;
+
+    private static final int SALT_SIZE = 8;
+
+    private static final int IV_SIZE = 16;
+
+    private static final int HEADER_SIZE = 2 + SALT_SIZE * 2 + IV_SIZE;
+
+    private static final int HMAC_SIZE = 32;
+
+    private final Function<byte[], SecretKey> keyResolver;
+
+    private Cipher cipher;
+
+    private Mac mac;
+
+    // the bytes read ahead of the decrypted ones, the trailing hmac is among them once the content ends.
+    private final byte[] window = new byte[IOUtils.DEFAULT_BUFFER_SIZE + HMAC_SIZE];
+
+    private int windowLength;
+
+    private byte[] pending = new byte[0];
+
+    private int pendingOffset;
+
+    private boolean finished;
+
+    // resolves the key for a salt.
+    PasswordDecryptingInputStream(
+            @NotNull final InputStream in,
+            @NotNull final Function<byte[], SecretKey> keyResolver
+    ) {
+        super(in);
+        this.keyResolver = keyResolver;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final var b = new byte[1];
+
+        return this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(@NotNull final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (cipher == null) {
+            this.readHeader();
+        }
+
+        while (pendingOffset == pending.length) {
+            if (finished) {
+                return -1;
+            }
+
+            this.fill();
+        }
+
+        final var count = Math.min(len, pending.length - pendingOffset);
+
+        System.arraycopy(pending, pendingOffset, b, off, count);
+        pendingOffset += count;
+
+        return count;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        return IOUtils.skip(this, n);
+    }
+
+    @Override
+    public int available() {
+        return pending.length - pendingOffset;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(final int readLimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    private void readHeader() throws IOException {
+        final var header = new byte[HEADER_SIZE];
+
+        if (IOUtils.read(in, header) != HEADER_SIZE) {
+            throw new StreamIntegrityException("Not enough data to read the header.");
+        }
+
+        if (header[0] != VERSION || header[1] != PASSWORD_OPTIONS) {
+            throw new StreamIntegrityException("Unexpected format version or options.");
+        }
+
+        final var encryptionSalt = Arrays.copyOfRange(header, 2, 2 + SALT_SIZE);
+        final var hmacSalt = Arrays.copyOfRange(header, 2 + SALT_SIZE, 2 + SALT_SIZE * 2);
+        final var iv = Arrays.copyOfRange(header, 2 + SALT_SIZE * 2, HEADER_SIZE);
+
+        try {
+            cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.DECRYPT_MODE, keyResolver.apply(encryptionSalt), new IvParameterSpec(iv));
+
+            mac = Mac.getInstance("HmacSHA256");
+            mac.init(keyResolver.apply(hmacSalt));
+        } catch (final GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+
+        mac.update(header);
+    }
+
+    private void fill() throws IOException {
+        final var read = in.read(window, windowLength, window.length - windowLength);
+
+        if (read == -1) {
+            this.finish();
+            return;
+        }
+
+        windowLength += read;
+
+        final var ready = windowLength - HMAC_SIZE;
+
+        if (ready <= 0) {
+            return;
+        }
+
+        mac.update(window, 0, ready);
+
+        final var decrypted = cipher.update(window, 0, ready);
+
+        System.arraycopy(window, ready, window, 0, HMAC_SIZE);
+        windowLength = HMAC_SIZE;
+
+        pending = decrypted != null ? decrypted : new byte[0];
+        pendingOffset = 0;
+    }
+
+    private void finish() throws IOException {
+        finished = true;
+
+        if (windowLength != HMAC_SIZE
+                || !MessageDigest.isEqual(mac.doFinal(), Arrays.copyOf(window, HMAC_SIZE))) {
+            throw new StreamIntegrityException("MAC validation failed.");
+        }
+
+        try {
+            pending = cipher.doFinal();
+        } catch (final GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+
+        pendingOffset = 0;
+    }
+}
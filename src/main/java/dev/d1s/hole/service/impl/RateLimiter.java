@@ -0,0 +1,59 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import java.util.concurrent.TimeUnit;
+
+// Paces the background scans, so they leave the disks and the database to the requests.
+// The permits are whatever the scan counts, the idle time is not saved up for bursts.
+final class RateLimiter {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+    private final long permitsPerSecond;
+
+    private long nextFreeTime = System.nanoTime();
+
+    // unlimited if not positive.
+    RateLimiter(final long permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    void acquire(final long permits) throws InterruptedException {
+        if (permitsPerSecond <= 0L) {
+            return;
+        }
+
+        final long delay;
+
+        synchronized (this) {
+            final var now = System.nanoTime();
+
+            if (nextFreeTime < now) {
+                nextFreeTime = now;
+            }
+
+            delay = nextFreeTime - now;
+
+            nextFreeTime += (long) (permits * NANOS_PER_SECOND / permitsPerSecond);
+        }
+
+        if (delay > 0L) {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import dev.d1s.hole.accessor.ObjectStorageAccessor;
+import dev.d1s.hole.properties.StorageConfigurationProperties;
+import dev.d1s.hole.repository.StorageBlobRepository;
+import dev.d1s.hole.service.LockService;
+import dev.d1s.hole.service.StorageBlobService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.OutputStream;
+
+@Service
+public class StorageBlobServiceImpl implements StorageBlobService {
+
+    private static final Logger log = LogManager.getLogger();
+
+    private StorageBlobRepository storageBlobRepository;
+
+    private ObjectStorageAccessor objectStorageAccessor;
+
+    private StorageConfigurationProperties properties;
+
+    private LockService lockService;
+
+    @Override
+    public boolean isDeduplicationEnabled() {
+        return properties.isDeduplication();
+    }
+
+    // The reference count is changed with a single statement, so the row lock serializes the concurrent
+    // uploads and deletions of the same blob: the blob file is published only by the first reference
+    // and removed only after the last one is gone. The first reference publishes the file before its row
+    // is committed, so a failure fails the request and undoes the reference. The blob's lock is held until
+    // the completion, so a rolled back upload removes its file before anyone else may publish it anew.
+    @Override
+    @Transactional
+    public void commitBlob(@NotNull final OutputStream out, @NotNull final String digest) {
+        final var referenceCount = storageBlobRepository.acquireReference(digest);
+
+        if (referenceCount != 1L) {
+            objectStorageAccessor.discardOutputStream(out);
+
+            log.debug("Reused blob {}, references: {}", digest, referenceCount);
+
+            return;
+        }
+
+        lockService.lockWrite(digest);
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+            @Override
+            public void afterCompletion(final int status) {
+                try {
+                    if (status != STATUS_COMMITTED) {
+                        objectStorageAccessor.deleteBlob(digest);
+                    }
+                } catch (final RuntimeException e) {
+                    log.warn("Failed to delete the rolled back blob {}: {}", digest, e.getMessage());
+                } finally {
+                    lockService.unlockWrite(digest);
+                }
+            }
+        });
+
+        // the accessor discards the staged content itself if the publishing fails.
+        objectStorageAccessor.publishBlob(out, digest);
+
+        log.debug("Stored blob {}", digest);
+    }
+
+    @Override
+    @Transactional
+    public void releaseBlob(@NotNull final String digest) {
+        // the pending changes of the referencing objects have to reach the database before the blob row may go away.
+        storageBlobRepository.flush();
+
+        final var referenceCount = storageBlobRepository.releaseReference(digest);
+
+        if (referenceCount == null || referenceCount > 0L) {
+            log.debug("Released blob {}, references: {}", digest, referenceCount);
+            return;
+        }
+
+        storageBlobRepository.deleteUnreferenced(digest);
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+            @Override
+            public void afterCommit() {
+                StorageBlobServiceImpl.this.deleteBlob(digest);
+            }
+        });
+    }
+
+    @Autowired
+    public void setStorageBlobRepository(final StorageBlobRepository storageBlobRepository) {
+        this.storageBlobRepository = storageBlobRepository;
+    }
+
+    @Autowired
+    public void setObjectStorageAccessor(final ObjectStorageAccessor objectStorageAccessor) {
+        this.objectStorageAccessor = objectStorageAccessor;
+    }
+
+    @Autowired
+    public void setProperties(final StorageConfigurationProperties properties) {
+        this.properties = properties;
+    }
+
+    @Autowired
+    public void setLockService(final LockService lockService) {
+        this.lockService = lockService;
+    }
+
+    // A new reference might have been committed since the row was deleted, its upload published the file anew then.
+    // The check and the removal are done under the blob's lock, so that publishing waits for them.
+    // The row is gone already, the file left behind on a failure is removed by the reconciliation.
+    private void deleteBlob(final String digest) {
+        try {
+            lockService.lockWrite(digest);
+        } catch (final RuntimeException e) {
+            log.warn("Failed to delete blob {}: {}", digest, e.getMessage());
+            return;
+        }
+
+        try {
+            if (storageBlobRepository.existsById(digest)) {
+                return;
+            }
+
+            objectStorageAccessor.deleteBlob(digest);
+
+            log.debug("Deleted blob {}", digest);
+        } catch (final RuntimeException e) {
+            log.warn("Failed to delete blob {}: {}", digest, e.getMessage());
+        } finally {
+            lockService.unlockWrite(digest);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import dev.d1s.hole.accessor.impl.StorageRootRing;
+import dev.d1s.hole.constant.properties.ConfigurationPropertiesPrefixConstants;
+import dev.d1s.hole.constant.storage.StorageBackendConstants;
+import dev.d1s.hole.constant.storage.StorageFileConstants;
+import dev.d1s.hole.factory.StoragePathFactory;
+import dev.d1s.hole.service.LockService;
+import dev.d1s.hole.service.StorageLayoutMigrationService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+@Service
+@ConditionalOnProperty(
+        prefix = ConfigurationPropertiesPrefixConstants.STORAGE,
+        name = StorageBackendConstants.BACKEND_PROPERTY,
+        havingValue = StorageBackendConstants.FILESYSTEM_BACKEND,
+        matchIfMissing = true
+)
+public class StorageLayoutMigrationServiceImpl implements StorageLayoutMigrationService {
+
+    private static final int PROGRESS_LOG_INTERVAL = 10_000;
+
+    private static final Logger log = LogManager.getLogger();
+
+    private StorageRootRing storageRootRing;
+
+    private StoragePathFactory storagePathFactory;
+
+    private LockService lockService;
+
+    // The migration only looks at the regular files left in the root, so an interrupted run
+    // is simply resumed on the next startup. Readers fall back to the flat path meanwhile.
+    @Async
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateToShardedLayout() {
+        if (!storagePathFactory.isSharded()) {
+            return;
+        }
+
+        // the flat layout predates the striping, so only the primary root may hold such objects.
+        final var root = storageRootRing.getPrimary().getPath();
+
+        var migratedObjects = 0L;
+        var failedObjects = 0L;
+
+        try (final var entries = Files.newDirectoryStream(root, Files::isRegularFile)) {
+            for (final var flatPath : entries) {
+                final var id = flatPath.getFileName().toString();
+
+                if (id.startsWith(StorageFileConstants.TEMPORARY_FILE_PREFIX)) {
+                    continue;
+                }
+
+                // an object removed or rewritten meanwhile must not stop the rest of the migration.
+                try {
+                    this.migrateObject(id, flatPath, storagePathFactory.createPath(root, id));
+                } catch (final IOException e) {
+                    log.warn("Failed to migrate object {} to the sharded layout: {}", id, e.toString());
+
+                    failedObjects++;
+
+                    continue;
+                }
+
+                if (++migratedObjects % PROGRESS_LOG_INTERVAL == 0) {
+                    log.info("Migrated {} objects to the sharded layout so far", migratedObjects);
+                }
+            }
+        } catch (final IOException e) {
+            log.error("Failed to migrate the storage root to the sharded layout. " +
+                    "The migration will be resumed on the next startup.", e);
+
+            return;
+        }
+
+        if (migratedObjects > 0) {
+            log.info("Migrated {} objects to the sharded layout", migratedObjects);
+        }
+
+        if (failedObjects > 0) {
+            log.warn("Failed to migrate {} objects to the sharded layout. " +
+                    "The migration will be resumed on the next startup.", failedObjects);
+        }
+    }
+
+    @Autowired
+    public void setStorageRootRing(final StorageRootRing storageRootRing) {
+        this.storageRootRing = storageRootRing;
+    }
+
+    @Autowired
+    public void setStoragePathFactory(final StoragePathFactory storagePathFactory) {
+        this.storagePathFactory = storagePathFactory;
+    }
+
+    @Autowired
+    public void setLockService(final LockService lockService) {
+        this.lockService = lockService;
+    }
+
+    // the write lock keeps an overwrite from publishing the sharded copy between the check and the move.
+    private void migrateObject(final String id, final Path flatPath, final Path path) throws IOException {
+        lockService.lockWrite(id);
+
+        try {
+            // the object was already rewritten into the sharded layout, so the flat copy is stale.
+            if (Files.exists(path)) {
+                Files.deleteIfExists(flatPath);
+                return;
+            }
+
+            Files.createDirectories(path.getParent());
+
+            Files.move(flatPath, path, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            lockService.unlockWrite(id);
+        }
+
+        log.debug("Migrated object {} to {}", flatPath, path);
+    }
+}
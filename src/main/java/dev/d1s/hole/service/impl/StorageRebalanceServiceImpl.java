@@ -0,0 +1,206 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import dev.d1s.hole.accessor.ObjectStorageAccessor;
+import dev.d1s.hole.accessor.impl.StorageRootRing;
+import dev.d1s.hole.constant.properties.ConfigurationPropertiesPrefixConstants;
+import dev.d1s.hole.constant.storage.StorageBackendConstants;
+import dev.d1s.hole.properties.StorageConfigurationProperties;
+import dev.d1s.hole.repository.StorageBlobRepository;
+import dev.d1s.hole.repository.StorageObjectRepository;
+import dev.d1s.hole.service.LockService;
+import dev.d1s.hole.service.StorageRebalanceService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+@Service
+@ConditionalOnProperty(
+        prefix = ConfigurationPropertiesPrefixConstants.STORAGE,
+        name = StorageBackendConstants.BACKEND_PROPERTY,
+        havingValue = StorageBackendConstants.FILESYSTEM_BACKEND,
+        matchIfMissing = true
+)
+public class StorageRebalanceServiceImpl implements StorageRebalanceService {
+
+    private static final int PAGE_SIZE = 500;
+
+    private static final int PROGRESS_LOG_INTERVAL = 10_000;
+
+    private static final Logger log = LogManager.getLogger();
+
+    private StorageConfigurationProperties properties;
+
+    private StorageRootRing storageRootRing;
+
+    private ObjectStorageAccessor objectStorageAccessor;
+
+    private StorageObjectRepository storageObjectRepository;
+
+    private StorageBlobRepository storageBlobRepository;
+
+    private LockService lockService;
+
+    private StorageRebalanceServiceImpl storageRebalanceServiceImpl;
+
+    // Moves the contents that are not on the root they would be placed on now, which is what happens
+    // to a share of them once a root is added. Every content is copied before its source is removed,
+    // so an interrupted run is simply resumed on the next startup.
+    @Async
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebalance() {
+        if (!properties.isRebalance() || !storageRootRing.isStriped()) {
+            return;
+        }
+
+        log.info("Rebalancing the storage roots");
+
+        final var movedObjects = this.rebalanceAll(
+                storageObjectRepository::findUnsharedIds,
+                storageRebalanceServiceImpl::rebalanceObject,
+                "id",
+                "objects"
+        );
+
+        final var movedBlobs = this.rebalanceAll(
+                storageBlobRepository::findDigests,
+                storageRebalanceServiceImpl::rebalanceBlob,
+                "digest",
+                "blobs"
+        );
+
+        log.info("Rebalanced the storage roots, moved {} objects and {} blobs", movedObjects, movedBlobs);
+    }
+
+    // the object record is read under the lock, but only its placement is written back,
+    // so the concurrent changes of the other columns are never overwritten.
+    @Override
+    public boolean rebalanceObject(@NotNull final String id) {
+        lockService.lockWrite(id);
+
+        try {
+            final var object = storageObjectRepository.findById(id).orElse(null);
+
+            if (object == null || !objectStorageAccessor.rebalanceObject(object)) {
+                return false;
+            }
+
+            storageObjectRepository.updatePlacement(id, object.getStorageRoot(), object.getTier());
+
+            return true;
+        } finally {
+            lockService.unlockWrite(id);
+        }
+    }
+
+    // the blob row stays locked while the blob is moved, so it can't be released and deleted meanwhile.
+    @Override
+    @Transactional
+    public boolean rebalanceBlob(@NotNull final String digest) {
+        return storageBlobRepository.lockReferenced(digest).isPresent()
+                && objectStorageAccessor.rebalanceBlob(digest);
+    }
+
+    @Autowired
+    public void setProperties(final StorageConfigurationProperties properties) {
+        this.properties = properties;
+    }
+
+    @Autowired
+    public void setStorageRootRing(final StorageRootRing storageRootRing) {
+        this.storageRootRing = storageRootRing;
+    }
+
+    @Autowired
+    public void setObjectStorageAccessor(final ObjectStorageAccessor objectStorageAccessor) {
+        this.objectStorageAccessor = objectStorageAccessor;
+    }
+
+    @Autowired
+    public void setStorageObjectRepository(final StorageObjectRepository storageObjectRepository) {
+        this.storageObjectRepository = storageObjectRepository;
+    }
+
+    @Autowired
+    public void setStorageBlobRepository(final StorageBlobRepository storageBlobRepository) {
+        this.storageBlobRepository = storageBlobRepository;
+    }
+
+    @Autowired
+    public void setLockService(final LockService lockService) {
+        this.lockService = lockService;
+    }
+
+    @Lazy
+    @Autowired
+    public void setStorageRebalanceServiceImpl(final StorageRebalanceServiceImpl storageRebalanceServiceImpl) {
+        this.storageRebalanceServiceImpl = storageRebalanceServiceImpl;
+    }
+
+    private long rebalanceAll(
+            final Function<Pageable, Page<String>> pageLoader,
+            final Predicate<String> rebalancer,
+            final String sortProperty,
+            final String kind
+    ) {
+        var moved = 0L;
+        var checked = 0L;
+
+        var pageable = (Pageable) PageRequest.of(0, PAGE_SIZE, Sort.by(Sort.Direction.ASC, sortProperty));
+
+        Page<String> page;
+
+        do {
+            page = pageLoader.apply(pageable);
+
+            for (final var key : page) {
+                try {
+                    if (rebalancer.test(key)) {
+                        moved++;
+                    }
+                } catch (final RuntimeException e) {
+                    log.warn("Failed to rebalance {} {}: {}", kind, key, e.getMessage());
+                }
+
+                if (++checked % PROGRESS_LOG_INTERVAL == 0) {
+                    log.info("Checked {} {} so far, moved {}", checked, kind, moved);
+                }
+            }
+
+            pageable = page.nextPageable();
+        } while (page.hasNext());
+
+        return moved;
+    }
+}
@@ -0,0 +1,607 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import dev.d1s.hole.accessor.ObjectStorageAccessor;
+import dev.d1s.hole.accessor.impl.StorageRootRing;
+import dev.d1s.hole.accessor.impl.pack.PackFileStore;
+import dev.d1s.hole.constant.properties.ConfigurationPropertiesPrefixConstants;
+import dev.d1s.hole.constant.storage.StorageBackendConstants;
+import dev.d1s.hole.constant.storage.StorageFileConstants;
+import dev.d1s.hole.factory.StoragePathFactory;
+import dev.d1s.hole.properties.ReconciliationConfigurationProperties;
+import dev.d1s.hole.properties.StorageConfigurationProperties;
+import dev.d1s.hole.repository.StorageBlobRepository;
+import dev.d1s.hole.repository.StorageObjectRepository;
+import dev.d1s.hole.service.LockService;
+import dev.d1s.hole.service.StorageBlobService;
+import dev.d1s.hole.service.StorageReconciliationService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+// Finds the contents without records and the records without contents. The stored keys are read
+// in batches, sorted and merge-joined with the sorted keys of the matching records, the records are
+// paged by their ids and probed, so the memory stays bounded by the batch size whatever the storage holds.
+// Both sides younger than the grace period are skipped, since the content is written before
+// the transaction creating its record commits.
+@Service
+@ConditionalOnProperty(
+        prefix = ConfigurationPropertiesPrefixConstants.STORAGE,
+        name = StorageBackendConstants.BACKEND_PROPERTY,
+        havingValue = StorageBackendConstants.FILESYSTEM_BACKEND,
+        matchIfMissing = true
+)
+public class StorageReconciliationServiceImpl implements StorageReconciliationService, InitializingBean, DisposableBean {
+
+    private static final Pattern SHARD_NAME_PATTERN = Pattern.compile("[0-9a-f]{2}");
+
+    private static final Logger log = LogManager.getLogger();
+
+    private ReconciliationConfigurationProperties properties;
+
+    private StorageConfigurationProperties storageProperties;
+
+    private StorageRootRing storageRootRing;
+
+    private StoragePathFactory storagePathFactory;
+
+    private PackFileStore packFileStore;
+
+    private ObjectStorageAccessor objectStorageAccessor;
+
+    private StorageObjectRepository storageObjectRepository;
+
+    private StorageBlobRepository storageBlobRepository;
+
+    private StorageBlobService storageBlobService;
+
+    private LockService lockService;
+
+    private TaskScheduler taskScheduler;
+
+    private StorageReconciliationServiceImpl storageReconciliationServiceImpl;
+
+    @Nullable
+    private ScheduledFuture<?> reconciliation;
+
+    @Override
+    public void reconcile() {
+        final var run = new Run(
+                Instant.now().minus(properties.getGracePeriod()),
+                new RateLimiter(properties.getRate())
+        );
+
+        log.info("Reconciling the storage roots with the database, deleting the orphans: {}", properties.isDeleteOrphans());
+
+        try {
+            for (final var root : storageRootRing.getRoots()) {
+                final var path = root.getPath();
+
+                // the objects left in the flat layout are moved into the shards by the migration.
+                this.reconcileShards(run, path, storageProperties.getFanOutDepth(), this::findExistingIds);
+
+                this.reconcileShards(
+                        run,
+                        storagePathFactory.getBlobDirectory(path),
+                        storageProperties.getFanOutDepth(),
+                        this::findExistingDigests
+                );
+            }
+
+            this.reconcilePackedEntries(run);
+
+            this.reconcileRecords(run);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            log.info("The reconciliation was interrupted");
+
+            return;
+        } catch (final IOException e) {
+            log.error("Failed to reconcile the storage roots with the database", e);
+
+            return;
+        }
+
+        log.info(
+                "Reconciled the storage roots with the database, found {} orphaned files ({} bytes), " +
+                        "{} orphaned packed entries and {} objects without content, deleted {}",
+                run.orphanedFiles,
+                run.orphanedBytes,
+                run.orphanedEntries,
+                run.orphanedObjects,
+                run.deleted
+        );
+    }
+
+    // the record is checked again under the lock, so the content written or moved meanwhile is never missed.
+    @Override
+    @Transactional
+    public boolean deleteOrphanedObject(@NotNull final String id) {
+        lockService.lockWrite(id);
+
+        try {
+            final var object = storageObjectRepository.findById(id).orElse(null);
+
+            if (object == null || objectStorageAccessor.containsObject(object)) {
+                return false;
+            }
+
+            storageObjectRepository.delete(object);
+
+            final var blobDigest = object.getBlobDigest();
+
+            if (blobDigest != null) {
+                storageBlobService.releaseBlob(blobDigest);
+            }
+        } finally {
+            lockService.unlockWrite(id);
+        }
+
+        return true;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        final var interval = properties.getInterval();
+
+        // the first run waits for a whole interval, so it doesn't compete with the startup tasks.
+        this.reconciliation = taskScheduler.scheduleWithFixedDelay(
+                this::runReconciliation,
+                Instant.now().plus(interval),
+                interval
+        );
+    }
+
+    @Override
+    public void destroy() {
+        if (reconciliation != null) {
+            reconciliation.cancel(true);
+        }
+    }
+
+    @Autowired
+    public void setProperties(final ReconciliationConfigurationProperties properties) {
+        this.properties = properties;
+    }
+
+    @Autowired
+    public void setStorageProperties(final StorageConfigurationProperties storageProperties) {
+        this.storageProperties = storageProperties;
+    }
+
+    @Autowired
+    public void setStorageRootRing(final StorageRootRing storageRootRing) {
+        this.storageRootRing = storageRootRing;
+    }
+
+    @Autowired
+    public void setStoragePathFactory(final StoragePathFactory storagePathFactory) {
+        this.storagePathFactory = storagePathFactory;
+    }
+
+    @Autowired
+    public void setPackFileStore(final PackFileStore packFileStore) {
+        this.packFileStore = packFileStore;
+    }
+
+    @Autowired
+    public void setObjectStorageAccessor(final ObjectStorageAccessor objectStorageAccessor) {
+        this.objectStorageAccessor = objectStorageAccessor;
+    }
+
+    @Autowired
+    public void setStorageObjectRepository(final StorageObjectRepository storageObjectRepository) {
+        this.storageObjectRepository = storageObjectRepository;
+    }
+
+    @Autowired
+    public void setStorageBlobRepository(final StorageBlobRepository storageBlobRepository) {
+        this.storageBlobRepository = storageBlobRepository;
+    }
+
+    @Autowired
+    public void setStorageBlobService(final StorageBlobService storageBlobService) {
+        this.storageBlobService = storageBlobService;
+    }
+
+    @Autowired
+    public void setLockService(final LockService lockService) {
+        this.lockService = lockService;
+    }
+
+    @Autowired
+    public void setTaskScheduler(final TaskScheduler taskScheduler) {
+        this.taskScheduler = taskScheduler;
+    }
+
+    @Lazy
+    @Autowired
+    public void setStorageReconciliationServiceImpl(final StorageReconciliationServiceImpl storageReconciliationServiceImpl) {
+        this.storageReconciliationServiceImpl = storageReconciliationServiceImpl;
+    }
+
+    private void runReconciliation() {
+        try {
+            this.reconcile();
+        } catch (final RuntimeException e) {
+            log.warn("Failed to reconcile the storage roots with the database: {}", e.getMessage());
+        }
+    }
+
+    // the shard directories are named after the hash prefixes, which keeps the reserved directories out.
+    private void reconcileShards(
+            final Run run,
+            final Path directory,
+            final int depth,
+            final Function<Collection<String>, List<String>> keyLoader
+    ) throws IOException, InterruptedException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        if (depth == 0) {
+            this.reconcileDirectory(run, directory, keyLoader);
+            return;
+        }
+
+        try (final var shards = Files.newDirectoryStream(
+                directory,
+                entry -> SHARD_NAME_PATTERN.matcher(entry.getFileName().toString()).matches()
+                        && Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)
+        )) {
+            for (final var shard : shards) {
+                this.reconcileShards(run, shard, depth - 1, keyLoader);
+            }
+        }
+    }
+
+    private void reconcileDirectory(
+            final Run run,
+            final Path directory,
+            final Function<Collection<String>, List<String>> keyLoader
+    ) throws IOException, InterruptedException {
+        final var batchSize = properties.getBatchSize();
+
+        final var batch = new ArrayList<StoredFile>(batchSize);
+
+        try (final var entries = Files.newDirectoryStream(directory)) {
+            for (final var entry : entries) {
+                run.rateLimiter.acquire(1L);
+
+                final BasicFileAttributes attributes;
+
+                try {
+                    attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (final NoSuchFileException e) {
+                    continue;
+                }
+
+                if (!attributes.isRegularFile() || !attributes.lastModifiedTime().toInstant().isBefore(run.deadline)) {
+                    continue;
+                }
+
+                final var name = entry.getFileName().toString();
+
+                // the staged content left behind by a crash, the live staging files are younger.
+                if (name.startsWith(StorageFileConstants.TEMPORARY_FILE_PREFIX)) {
+                    this.processOrphanedFile(run, entry, attributes.size());
+                    continue;
+                }
+
+                batch.add(new StoredFile(this.getKey(name), entry, attributes.size()));
+
+                if (batch.size() == batchSize) {
+                    this.reconcileBatch(run, batch, keyLoader);
+
+                    batch.clear();
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            this.reconcileBatch(run, batch, keyLoader);
+        }
+    }
+
+    private void reconcileBatch(
+            final Run run,
+            final List<StoredFile> batch,
+            final Function<Collection<String>, List<String>> keyLoader
+    ) {
+        batch.sort(Comparator.comparing(StoredFile::key));
+
+        final var existingKeys = this.loadSortedKeys(
+                batch.stream().map(StoredFile::key).distinct().toList(),
+                keyLoader
+        );
+
+        var position = 0;
+
+        for (final var file : batch) {
+            while (position < existingKeys.size() && existingKeys.get(position).compareTo(file.key()) < 0) {
+                position++;
+            }
+
+            if (position == existingKeys.size() || !existingKeys.get(position).equals(file.key())) {
+                this.processOrphanedFile(run, file, keyLoader);
+            }
+        }
+    }
+
+    // The keys are batched for the database as the pack index is iterated, so only a batch is held at a time.
+    // The index tolerates the deletions of the orphaned entries during the iteration.
+    private void reconcilePackedEntries(final Run run) throws InterruptedException {
+        final var batchSize = properties.getBatchSize();
+
+        final var objectKeys = new ArrayList<String>(batchSize);
+        final var blobKeys = new ArrayList<String>(batchSize);
+
+        packFileStore.forEachKey(run.deadline, key -> {
+            try {
+                run.rateLimiter.acquire(1L);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                return false;
+            }
+
+            if (key.startsWith(StorageFileConstants.PACKED_BLOB_KEY_PREFIX)) {
+                blobKeys.add(key.substring(StorageFileConstants.PACKED_BLOB_KEY_PREFIX.length()));
+
+                if (blobKeys.size() == batchSize) {
+                    this.reconcilePackedBlobs(run, blobKeys);
+                }
+            } else {
+                objectKeys.add(key);
+
+                if (objectKeys.size() == batchSize) {
+                    this.reconcilePackedObjects(run, objectKeys);
+                }
+            }
+
+            return true;
+        });
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        this.reconcilePackedBlobs(run, blobKeys);
+        this.reconcilePackedObjects(run, objectKeys);
+    }
+
+    private void reconcilePackedObjects(final Run run, final List<String> ids) {
+        this.reconcilePackedBatch(run, ids, "", this::findExistingIds);
+    }
+
+    private void reconcilePackedBlobs(final Run run, final List<String> digests) {
+        this.reconcilePackedBatch(run, digests, StorageFileConstants.PACKED_BLOB_KEY_PREFIX, this::findExistingDigests);
+    }
+
+    private void reconcilePackedBatch(
+            final Run run,
+            final List<String> batch,
+            final String keyPrefix,
+            final Function<Collection<String>, List<String>> keyLoader
+    ) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        batch.sort(null);
+
+        final var existingKeys = this.loadSortedKeys(batch, keyLoader);
+
+        var position = 0;
+
+        for (final var key : batch) {
+            while (position < existingKeys.size() && existingKeys.get(position).compareTo(key) < 0) {
+                position++;
+            }
+
+            if (position == existingKeys.size() || !existingKeys.get(position).equals(key)) {
+                run.orphanedEntries++;
+
+                log.info("Found orphaned packed entry {}", keyPrefix + key);
+
+                if (properties.isDeleteOrphans()) {
+                    try {
+                        if (packFileStore.delete(keyPrefix + key)) {
+                            run.deleted++;
+                        }
+                    } catch (final IOException e) {
+                        log.warn("Failed to delete the orphaned packed entry {}: {}", keyPrefix + key, e.getMessage());
+                    }
+                }
+            }
+        }
+
+        batch.clear();
+    }
+
+    // the records are probed one by one, since their contents are spread over the shards by the hash.
+    private void reconcileRecords(final Run run) throws InterruptedException {
+        final var batchSize = properties.getBatchSize();
+
+        var after = "";
+
+        List<String> page;
+
+        do {
+            page = storageObjectRepository.findIdsCreatedBefore(after, run.deadline, PageRequest.of(0, batchSize));
+
+            run.rateLimiter.acquire(page.size());
+
+            for (final var object : storageObjectRepository.findAllById(page)) {
+                if (objectStorageAccessor.containsObject(object)) {
+                    continue;
+                }
+
+                final var id = object.getId();
+
+                run.orphanedObjects++;
+
+                log.info("Found storage object {} without content", id);
+
+                if (properties.isDeleteOrphans() && storageReconciliationServiceImpl.deleteOrphanedObject(id)) {
+                    run.deleted++;
+                }
+            }
+
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1);
+            }
+        } while (page.size() == batchSize);
+    }
+
+    // The batch was checked without any lock, so the key and the age of the file are checked again under the lock
+    // of the key before the file is deleted. An upload of the same content publishes its file under that lock.
+    private void processOrphanedFile(
+            final Run run,
+            final StoredFile file,
+            final Function<Collection<String>, List<String>> keyLoader
+    ) {
+        if (!properties.isDeleteOrphans()) {
+            this.processOrphanedFile(run, file.path(), file.size());
+            return;
+        }
+
+        final var key = file.key();
+
+        try {
+            lockService.lockWrite(key);
+        } catch (final RuntimeException e) {
+            log.warn("Failed to lock {} to delete its orphaned file: {}", key, e.getMessage());
+            return;
+        }
+
+        try {
+            if (!keyLoader.apply(List.of(key)).isEmpty()) {
+                return;
+            }
+
+            final var attributes = Files.readAttributes(file.path(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+            if (!attributes.lastModifiedTime().toInstant().isBefore(run.deadline)) {
+                return;
+            }
+
+            this.processOrphanedFile(run, file.path(), attributes.size());
+        } catch (final NoSuchFileException e) {
+            // removed meanwhile.
+        } catch (final IOException e) {
+            log.warn("Failed to check the orphaned file {}: {}", file.path(), e.getMessage());
+        } finally {
+            lockService.unlockWrite(key);
+        }
+    }
+
+    private void processOrphanedFile(final Run run, final Path path, final long size) {
+        run.orphanedFiles++;
+        run.orphanedBytes += size;
+
+        log.info("Found orphaned file {} ({} bytes)", path, size);
+
+        if (properties.isDeleteOrphans()) {
+            try {
+                if (Files.deleteIfExists(path)) {
+                    run.deleted++;
+                }
+            } catch (final IOException e) {
+                log.warn("Failed to delete the orphaned file {}: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    // sorted here as well, since the database might collate the keys differently.
+    private List<String> loadSortedKeys(
+            final List<String> keys,
+            final Function<Collection<String>, List<String>> keyLoader
+    ) {
+        final var existingKeys = new ArrayList<>(keyLoader.apply(keys));
+
+        existingKeys.sort(null);
+
+        return existingKeys;
+    }
+
+    private List<String> findExistingIds(final Collection<String> ids) {
+        return storageObjectRepository.findExistingIds(ids);
+    }
+
+    private List<String> findExistingDigests(final Collection<String> digests) {
+        return storageBlobRepository.findExistingDigests(digests);
+    }
+
+    private String getKey(final String fileName) {
+        return fileName.endsWith(StorageFileConstants.COMPRESSED_FILE_SUFFIX)
+                ? fileName.substring(0, fileName.length() - StorageFileConstants.COMPRESSED_FILE_SUFFIX.length())
+                : fileName;
+    }
+
+    private record StoredFile(String key, Path path, long size) {
+    }
+
+    private static final class Run {
+
+        private final Instant deadline;
+
+        private final RateLimiter rateLimiter;
+
+        private long orphanedFiles;
+
+        private long orphanedBytes;
+
+        private long orphanedEntries;
+
+        private long orphanedObjects;
+
+        private long deleted;
+
+        private Run(final Instant deadline, final RateLimiter rateLimiter) {
+            this.deadline = deadline;
+            this.rateLimiter = rateLimiter;
+        }
+    }
+}
@@ -0,0 +1,574 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import dev.d1s.hole.accessor.ObjectHandle;
+import dev.d1s.hole.accessor.ObjectStorageAccessor;
+import dev.d1s.hole.accessor.impl.StorageRoot;
+import dev.d1s.hole.accessor.impl.StorageRootRing;
+import dev.d1s.hole.constant.longPolling.StorageObjectLongPollingConstants;
+import dev.d1s.hole.constant.properties.ConfigurationPropertiesPrefixConstants;
+import dev.d1s.hole.constant.storage.StorageBackendConstants;
+import dev.d1s.hole.constant.storage.StorageFileConstants;
+import dev.d1s.hole.entity.storageObject.StorageObject;
+import dev.d1s.hole.properties.ScrubbingConfigurationProperties;
+import dev.d1s.hole.repository.StorageBlobRepository;
+import dev.d1s.hole.repository.StorageObjectRepository;
+import dev.d1s.hole.service.LockService;
+import dev.d1s.hole.service.StorageScrubbingService;
+import dev.d1s.hole.service.storageObject.StorageObjectService;
+import dev.d1s.lp.server.publisher.AsyncLongPollingEventPublisher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.BiFunction;
+
+// Re-reads every stored copy of the contents and compares its digest with the one recorded when it was written,
+// so the bit rot is found before a client fetches the object. The encrypted and compressed contents are verified
+// by the digest of the stored bytes, no keys are needed. The contents written before the stored digests existed
+// get theirs recorded on the first pass, unless the stored bytes are the content itself.
+//
+// The unshared objects are scrubbed first and the blobs after them, both in the order of their keys.
+// The position is saved after every batch, so a restart resumes the pass instead of starting it over.
+@Service
+@ConditionalOnProperty(
+        prefix = ConfigurationPropertiesPrefixConstants.STORAGE,
+        name = StorageBackendConstants.BACKEND_PROPERTY,
+        havingValue = StorageBackendConstants.FILESYSTEM_BACKEND,
+        matchIfMissing = true
+)
+public class StorageScrubbingServiceImpl implements StorageScrubbingService, InitializingBean, DisposableBean {
+
+    private static final String CURSOR_DIRECTORY = "scrub";
+
+    private static final String CURSOR_FILE = "cursor";
+
+    private static final Duration STARTUP_DELAY = Duration.ofMinutes(10);
+
+    private static final Duration CHECK_INTERVAL = Duration.ofHours(1);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // a mismatch is confirmed by another read, the record might not have caught up with an overwrite yet.
+    private static final int VERIFICATION_ATTEMPTS = 2;
+
+    private static final String OBJECTS_METRIC = "storage.scrub.objects";
+
+    private static final String BYTES_METRIC = "storage.scrub.bytes";
+
+    private static final Logger log = LogManager.getLogger();
+
+    private ScrubbingConfigurationProperties properties;
+
+    private StorageRootRing storageRootRing;
+
+    private ObjectStorageAccessor objectStorageAccessor;
+
+    private StorageObjectRepository storageObjectRepository;
+
+    private StorageBlobRepository storageBlobRepository;
+
+    private StorageObjectService storageObjectService;
+
+    private LockService lockService;
+
+    private AsyncLongPollingEventPublisher publisher;
+
+    private MeterRegistry meterRegistry;
+
+    private TaskScheduler taskScheduler;
+
+    private ForkJoinPool pool;
+
+    private Path cursorPath;
+
+    private Counter verifiedCounter;
+
+    private Counter recordedCounter;
+
+    private Counter corruptedCounter;
+
+    private Counter bytesCounter;
+
+    @Nullable
+    private ScheduledFuture<?> scrubbing;
+
+    @Override
+    public void scrub() {
+        var cursor = this.loadCursor();
+
+        final var now = Instant.now();
+
+        if (cursor.phase() == Phase.FINISHED) {
+            if (cursor.time().plus(properties.getInterval()).isAfter(now)) {
+                return;
+            }
+
+            cursor = new Cursor(Phase.OBJECTS, "", now);
+        }
+
+        final var rateLimiter = new RateLimiter(properties.getRate().toBytes());
+
+        log.info("Scrubbing the storage, phase: {}, resuming after '{}'", cursor.phase(), cursor.key());
+
+        try {
+            if (cursor.phase() == Phase.OBJECTS) {
+                this.scrubAll(
+                        cursor,
+                        storageObjectRepository::findUnsharedIdsAfter,
+                        id -> this.scrubObject(id, rateLimiter)
+                );
+
+                cursor = new Cursor(Phase.BLOBS, "", cursor.time());
+
+                this.saveCursor(cursor);
+            }
+
+            this.scrubAll(
+                    cursor,
+                    storageBlobRepository::findReferencedDigestsAfter,
+                    digest -> this.scrubBlob(digest, rateLimiter)
+            );
+
+            this.saveCursor(new Cursor(Phase.FINISHED, "", Instant.now()));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            log.info("The scrubbing was interrupted, it will be resumed on the next startup");
+
+            return;
+        }
+
+        log.info("Scrubbed the storage, the pass took {}", Duration.between(cursor.time(), Instant.now()));
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        this.verifiedCounter = this.registerCounter("verified");
+        this.recordedCounter = this.registerCounter("recorded");
+        this.corruptedCounter = this.registerCounter("corrupted");
+
+        this.bytesCounter = Counter.builder(BYTES_METRIC)
+                .description("The bytes read by the scrubber")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        this.cursorPath = storageRootRing.getPrimary().getPath().resolve(CURSOR_DIRECTORY).resolve(CURSOR_FILE);
+
+        // The objects are scrubbed concurrently by a shared pool, sized by the number of the distinct disks
+        // unless configured. The tasks aren't bound to a disk, since every task reads all the copies of an object.
+        final var parallelism = properties.getParallelism() > 0
+                ? properties.getParallelism()
+                : (int) storageRootRing.getRoots().stream().map(StorageRoot::getFileStore).distinct().count();
+
+        this.pool = new ForkJoinPool(parallelism);
+
+        this.scrubbing = taskScheduler.scheduleWithFixedDelay(
+                this::runScrubbing,
+                Instant.now().plus(STARTUP_DELAY),
+                CHECK_INTERVAL
+        );
+    }
+
+    @Override
+    public void destroy() {
+        if (scrubbing != null) {
+            scrubbing.cancel(true);
+        }
+
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    @Autowired
+    public void setProperties(final ScrubbingConfigurationProperties properties) {
+        this.properties = properties;
+    }
+
+    @Autowired
+    public void setStorageRootRing(final StorageRootRing storageRootRing) {
+        this.storageRootRing = storageRootRing;
+    }
+
+    @Autowired
+    public void setObjectStorageAccessor(final ObjectStorageAccessor objectStorageAccessor) {
+        this.objectStorageAccessor = objectStorageAccessor;
+    }
+
+    @Autowired
+    public void setStorageObjectRepository(final StorageObjectRepository storageObjectRepository) {
+        this.storageObjectRepository = storageObjectRepository;
+    }
+
+    @Autowired
+    public void setStorageBlobRepository(final StorageBlobRepository storageBlobRepository) {
+        this.storageBlobRepository = storageBlobRepository;
+    }
+
+    @Autowired
+    public void setStorageObjectService(final StorageObjectService storageObjectService) {
+        this.storageObjectService = storageObjectService;
+    }
+
+    @Autowired
+    public void setLockService(final LockService lockService) {
+        this.lockService = lockService;
+    }
+
+    @Autowired
+    public void setPublisher(final AsyncLongPollingEventPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    @Autowired
+    public void setMeterRegistry(final MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Autowired
+    public void setTaskScheduler(final TaskScheduler taskScheduler) {
+        this.taskScheduler = taskScheduler;
+    }
+
+    private void runScrubbing() {
+        try {
+            this.scrub();
+        } catch (final RuntimeException e) {
+            log.warn("Failed to scrub the storage: {}", e.getMessage());
+        }
+    }
+
+    private void scrubAll(
+            final Cursor cursor,
+            final BiFunction<String, Pageable, List<String>> pageLoader,
+            final Scrubber scrubber
+    ) throws InterruptedException {
+        final var pageable = PageRequest.of(0, properties.getBatchSize());
+
+        var after = cursor.key();
+
+        List<String> page;
+
+        do {
+            page = pageLoader.apply(after, pageable);
+
+            final var tasks = new ArrayList<Callable<Void>>(page.size());
+
+            for (final var key : page) {
+                tasks.add(() -> {
+                    scrubber.scrub(key);
+                    return null;
+                });
+            }
+
+            final var futures = pool.invokeAll(tasks);
+
+            for (var i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (final ExecutionException e) {
+                    log.warn("Failed to scrub {}: {}", page.get(i), e.getCause().getMessage());
+                }
+            }
+
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1);
+
+                this.saveCursor(new Cursor(cursor.phase(), after, cursor.time()));
+            }
+        } while (page.size() == properties.getBatchSize());
+    }
+
+    // the copies are opened under the lock, so they match the record. They are read after it is released
+    // if the backend replaces the contents atomically, the opened copies stay readable then.
+    private void scrubObject(final String id, final RateLimiter rateLimiter) throws InterruptedException {
+        for (var attempt = 1; attempt <= VERIFICATION_ATTEMPTS; attempt++) {
+            lockService.lockRead(id);
+
+            var locked = true;
+
+            try {
+                final var object = storageObjectRepository.findById(id).orElse(null);
+
+                // the object was removed or its content is shared now.
+                if (object == null || object.getBlobDigest() != null) {
+                    return;
+                }
+
+                final var handles = objectStorageAccessor.openCopies(object);
+
+                if (objectStorageAccessor.supportsAtomicReplace()) {
+                    lockService.unlockRead(id);
+
+                    locked = false;
+                }
+
+                final var corruption = this.verify(object, handles, rateLimiter);
+
+                if (corruption == null) {
+                    return;
+                }
+
+                if (attempt == VERIFICATION_ATTEMPTS) {
+                    this.reportCorruption(List.of(id), id, corruption);
+                }
+            } finally {
+                if (locked) {
+                    lockService.unlockRead(id);
+                }
+            }
+        }
+    }
+
+    // the blobs never change, so they are verified through any of the referencing objects without locking.
+    private void scrubBlob(final String digest, final RateLimiter rateLimiter) throws InterruptedException {
+        final var object = storageObjectRepository.findFirstByBlobDigest(digest).orElse(null);
+
+        if (object == null) {
+            return;
+        }
+
+        final List<ObjectHandle> handles;
+
+        try {
+            handles = objectStorageAccessor.openCopies(object);
+        } catch (final RuntimeException e) {
+            // the blob was released meanwhile.
+            if (storageObjectRepository.findFirstByBlobDigest(digest).isEmpty()) {
+                return;
+            }
+
+            throw e;
+        }
+
+        final var corruption = this.verify(object, handles, rateLimiter);
+
+        if (corruption != null) {
+            this.reportCorruption(storageObjectRepository.findIdsByBlobDigest(digest), "blob " + digest, corruption);
+        }
+    }
+
+    // returns the description of the corruption if any of the copies doesn't match.
+    @Nullable
+    private String verify(
+            final StorageObject object,
+            final List<ObjectHandle> handles,
+            final RateLimiter rateLimiter
+    ) throws InterruptedException {
+        final var digests = new ArrayList<String>(handles.size());
+
+        try {
+            for (final var handle : handles) {
+                try {
+                    digests.add(this.hash(handle, rateLimiter));
+                } catch (final IOException e) {
+                    digests.add("unreadable (" + e.getMessage() + ")");
+                }
+            }
+        } finally {
+            handles.forEach(objectStorageAccessor::closeObject);
+        }
+
+        final var expectedDigest = this.getExpectedDigest(object);
+
+        if (expectedDigest == null) {
+            return this.recordDigest(object, digests);
+        }
+
+        final var mismatches = digests.stream().filter(digest -> !digest.equals(expectedDigest)).toList();
+
+        if (!mismatches.isEmpty()) {
+            return "%d of %d copies don't match the digest %s: %s".formatted(
+                    mismatches.size(),
+                    digests.size(),
+                    expectedDigest,
+                    mismatches
+            );
+        }
+
+        verifiedCounter.increment();
+
+        return null;
+    }
+
+    @Nullable
+    private String recordDigest(final StorageObject object, final List<String> digests) {
+        final var storedDigest = digests.get(0);
+
+        if (digests.stream().anyMatch(digest -> !digest.equals(storedDigest))) {
+            return "the copies differ and no digest was recorded to tell the intact ones: " + digests;
+        }
+
+        final var blobDigest = object.getBlobDigest();
+
+        if (blobDigest != null) {
+            storageObjectRepository.recordBlobStoredDigest(blobDigest, storedDigest);
+        } else {
+            storageObjectRepository.recordStoredDigest(Objects.requireNonNull(object.getId()), storedDigest);
+        }
+
+        recordedCounter.increment();
+
+        return null;
+    }
+
+    // the plain contents written before the stored digests were recorded are stored as received.
+    @Nullable
+    private String getExpectedDigest(final StorageObject object) {
+        final var storedDigest = object.getStoredDigest();
+
+        if (storedDigest != null) {
+            return storedDigest;
+        }
+
+        return !object.isEncrypted() && object.getCodec() == null
+                ? object.getDigest()
+                : null;
+    }
+
+    private String hash(final ObjectHandle handle, final RateLimiter rateLimiter) throws IOException, InterruptedException {
+        final var digest = DigestUtils.getSha256Digest();
+
+        final var buffer = new byte[BUFFER_SIZE];
+
+        try (final var in = handle.createInputStream()) {
+            int read;
+
+            while ((read = in.read(buffer)) != -1) {
+                rateLimiter.acquire(read);
+
+                digest.update(buffer, 0, read);
+
+                bytesCounter.increment(read);
+            }
+        }
+
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private void reportCorruption(final List<String> ids, final String subject, final String corruption) {
+        corruptedCounter.increment();
+
+        log.error("The stored content of {} is corrupted, {}", subject, corruption);
+
+        if (!properties.isPublishEvents()) {
+            return;
+        }
+
+        for (final var id : ids) {
+            try {
+                publisher.publish(
+                        StorageObjectLongPollingConstants.STORAGE_OBJECT_CORRUPTED_GROUP,
+                        id,
+                        storageObjectService.getObject(id, true).dto()
+                );
+            } catch (final RuntimeException e) {
+                log.warn("Failed to publish the corruption of {}: {}", id, e.getMessage());
+            }
+        }
+    }
+
+    private Counter registerCounter(final String result) {
+        return Counter.builder(OBJECTS_METRIC)
+                .description("The contents checked by the scrubber")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    // a missing or unreadable cursor starts a new pass.
+    private Cursor loadCursor() {
+        try {
+            final var lines = Files.readAllLines(cursorPath, StandardCharsets.UTF_8);
+
+            return new Cursor(Phase.valueOf(lines.get(0)), lines.get(1), Instant.parse(lines.get(2)));
+        } catch (final NoSuchFileException e) {
+            return new Cursor(Phase.FINISHED, "", Instant.EPOCH);
+        } catch (final IOException | RuntimeException e) {
+            log.warn("Failed to read the scrubbing cursor, starting a new pass: {}", e.getMessage());
+
+            return new Cursor(Phase.FINISHED, "", Instant.EPOCH);
+        }
+    }
+
+    private void saveCursor(final Cursor cursor) {
+        final var temporaryPath = cursorPath.resolveSibling(CURSOR_FILE + StorageFileConstants.TEMPORARY_FILE_SUFFIX);
+
+        try {
+            Files.createDirectories(cursorPath.getParent());
+
+            Files.write(
+                    temporaryPath,
+                    List.of(cursor.phase().name(), cursor.key(), cursor.time().toString()),
+                    StandardCharsets.UTF_8
+            );
+
+            Files.move(temporaryPath, cursorPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            log.warn("Failed to save the scrubbing cursor: {}", e.getMessage());
+        }
+    }
+
+    private enum Phase {
+        OBJECTS,
+        BLOBS,
+        FINISHED
+    }
+
+    // the time is when the pass started, or when it finished for the finished ones.
+    private record Cursor(Phase phase, String key, Instant time) {
+    }
+
+    @FunctionalInterface
+    private interface Scrubber {
+
+        void scrub(String key) throws InterruptedException;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import dev.d1s.hole.accessor.ObjectStorageAccessor;
+import dev.d1s.hole.entity.storageObject.StorageObject;
+import dev.d1s.hole.entity.storageObject.StorageTier;
+import dev.d1s.hole.properties.TieringConfigurationProperties;
+import dev.d1s.hole.repository.StorageObjectRepository;
+import dev.d1s.hole.service.CompressionService;
+import dev.d1s.hole.service.LockService;
+import dev.d1s.hole.service.ObjectAccessService;
+import dev.d1s.hole.service.StorageTieringService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.BiFunction;
+
+// Demotes the objects that weren't read for a while to the cold roots and promotes the cold objects
+// that are read often again. The access counts are halved after every run, so they follow the recent reads.
+@Service
+public class StorageTieringServiceImpl implements StorageTieringService, InitializingBean, DisposableBean {
+
+    private static final int PAGE_SIZE = 500;
+
+    private static final Logger log = LogManager.getLogger();
+
+    private ObjectStorageAccessor objectStorageAccessor;
+
+    private StorageObjectRepository storageObjectRepository;
+
+    private ObjectAccessService objectAccessService;
+
+    private CompressionService compressionService;
+
+    private LockService lockService;
+
+    private TieringConfigurationProperties properties;
+
+    private TaskScheduler taskScheduler;
+
+    @Nullable
+    private ScheduledFuture<?> tiering;
+
+    @Override
+    public void tier() {
+        objectAccessService.flush();
+
+        final var deadline = Instant.now().minus(properties.getColdAfter());
+        final var threshold = properties.getPromotionThreshold();
+
+        final var demoted = this.moveAll(
+                (after, pageable) -> storageObjectRepository.findDemotionCandidates(after, deadline, threshold, pageable),
+                StorageTier.COLD
+        );
+
+        final var promoted = this.moveAll(
+                (after, pageable) -> storageObjectRepository.findPromotionCandidates(after, threshold, pageable),
+                StorageTier.HOT
+        );
+
+        storageObjectRepository.decayAccessCounts();
+
+        if (demoted > 0 || promoted > 0) {
+            log.info("Demoted {} objects and promoted {} objects", demoted, promoted);
+        }
+    }
+
+    // the readers keep reading the previous copies while the content is moved, which is only safe
+    // if the backend can remove the opened files. The record is read under the lock, but only its placement
+    // is written back, so the concurrent changes of the other columns are never overwritten.
+    @Override
+    public boolean moveObject(@NotNull final String id, @NotNull final StorageTier tier) {
+        final var exclusive = !objectStorageAccessor.supportsAtomicReplace();
+
+        this.lock(id, exclusive);
+
+        try {
+            final var object = storageObjectRepository.findById(id).orElse(null);
+
+            if (object == null || !objectStorageAccessor.moveObject(object, tier, this.isCompressible(object, tier))) {
+                return false;
+            }
+
+            storageObjectRepository.updatePlacement(id, object.getStorageRoot(), object.getTier());
+
+            return true;
+        } finally {
+            this.unlock(id, exclusive);
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (objectStorageAccessor.supportsTiering()) {
+            this.tiering = taskScheduler.scheduleWithFixedDelay(this::runTiering, properties.getInterval());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (tiering != null) {
+            tiering.cancel(false);
+        }
+    }
+
+    @Autowired
+    public void setObjectStorageAccessor(final ObjectStorageAccessor objectStorageAccessor) {
+        this.objectStorageAccessor = objectStorageAccessor;
+    }
+
+    @Autowired
+    public void setStorageObjectRepository(final StorageObjectRepository storageObjectRepository) {
+        this.storageObjectRepository = storageObjectRepository;
+    }
+
+    @Autowired
+    public void setObjectAccessService(final ObjectAccessService objectAccessService) {
+        this.objectAccessService = objectAccessService;
+    }
+
+    @Autowired
+    public void setCompressionService(final CompressionService compressionService) {
+        this.compressionService = compressionService;
+    }
+
+    @Autowired
+    public void setLockService(final LockService lockService) {
+        this.lockService = lockService;
+    }
+
+    @Autowired
+    public void setProperties(final TieringConfigurationProperties properties) {
+        this.properties = properties;
+    }
+
+    @Autowired
+    public void setTaskScheduler(final TaskScheduler taskScheduler) {
+        this.taskScheduler = taskScheduler;
+    }
+
+    private void runTiering() {
+        try {
+            this.tier();
+        } catch (final RuntimeException e) {
+            log.warn("Failed to tier the storage objects: {}", e.getMessage());
+        }
+    }
+
+    // the candidates are paged by their ids, so the moved objects don't shift the pages.
+    private long moveAll(final BiFunction<String, Pageable, List<String>> candidateLoader, final StorageTier tier) {
+        final var pageable = PageRequest.of(0, PAGE_SIZE);
+
+        var moved = 0L;
+        var after = "";
+
+        List<String> page;
+
+        do {
+            page = candidateLoader.apply(after, pageable);
+
+            for (final var id : page) {
+                try {
+                    if (this.moveObject(id, tier)) {
+                        moved++;
+                    }
+                } catch (final RuntimeException e) {
+                    log.warn("Failed to move {} to the {} tier: {}", id, tier, e.getMessage());
+                }
+
+                after = id;
+            }
+        } while (page.size() == PAGE_SIZE);
+
+        return moved;
+    }
+
+    // the stored codec, the encryption and the formats that are compressed already leave nothing to gain.
+    private boolean isCompressible(final StorageObject object, final StorageTier tier) {
+        final var contentType = object.getContentType();
+
+        return tier == StorageTier.COLD
+                && properties.isCompression()
+                && !object.isEncrypted()
+                && object.getCodec() == null
+                && contentType != null
+                && compressionService.isCompressible(contentType);
+    }
+
+    private void lock(final String id, final boolean exclusive) {
+        if (exclusive) {
+            lockService.lockWrite(id);
+        } else {
+            lockService.lockRead(id);
+        }
+    }
+
+    private void unlock(final String id, final boolean exclusive) {
+        if (exclusive) {
+            lockService.unlockWrite(id);
+        } else {
+            lockService.unlockRead(id);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import dev.d1s.advice.exception.BadRequestException;
+import dev.d1s.hole.accessor.UploadContent;
+import dev.d1s.hole.constant.error.UploadSessionErrorConstants;
+import dev.d1s.hole.dto.uploadSession.UploadSessionChunkDto;
+import dev.d1s.hole.exception.uploadSession.UploadSessionConflictException;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// The chunk bookkeeping is guarded by the session monitor. The digest covers the contiguous prefix
+// of the content and is only touched while holding the digest lock.
+final class UploadSession {
+
+    private final String id;
+
+    private final Instant creationTime = Instant.now();
+
+    private final String group;
+
+    private final String name;
+
+    private final UploadContent content;
+
+    // both the received chunks and the ones being received, by their offsets.
+    private final TreeMap<Long, Chunk> chunks = new TreeMap<>();
+
+    private final ReentrantLock digestLock = new ReentrantLock();
+
+    private MessageDigest digest = DigestUtils.getSha256Digest();
+
+    private long digestedLength;
+
+    private long receivedLength;
+
+    private int pendingChunks;
+
+    private boolean closed;
+
+    private Instant lastAccessTime = creationTime;
+
+    UploadSession(
+            @NotNull final String id,
+            @NotNull final String group,
+            @NotNull final String name,
+            @NotNull final UploadContent content
+    ) {
+        this.id = id;
+        this.group = group;
+        this.name = name;
+        this.content = content;
+    }
+
+    @NotNull
+    synchronized Chunk reserveChunk(final int number, final long offset, final long length) {
+        if (closed) {
+            throw new UploadSessionConflictException(UploadSessionErrorConstants.UPLOAD_SESSION_CLOSED_ERROR);
+        }
+
+        final var previous = chunks.floorEntry(offset);
+        final var next = chunks.ceilingEntry(offset);
+
+        if ((previous != null && previous.getValue().getEnd() > offset)
+                || (next != null && next.getKey() < offset + length)
+                || chunks.values().stream().anyMatch(chunk -> chunk.number == number)) {
+            throw new UploadSessionConflictException(UploadSessionErrorConstants.CHUNK_CONFLICT_ERROR);
+        }
+
+        final var chunk = new Chunk(number, offset, length);
+
+        chunks.put(offset, chunk);
+
+        pendingChunks++;
+        lastAccessTime = Instant.now();
+
+        return chunk;
+    }
+
+    synchronized void completeChunk(@NotNull final Chunk chunk) {
+        chunk.received = true;
+
+        receivedLength += chunk.length;
+        pendingChunks--;
+        lastAccessTime = Instant.now();
+    }
+
+    synchronized void cancelChunk(@NotNull final Chunk chunk) {
+        chunks.remove(chunk.offset);
+
+        pendingChunks--;
+    }
+
+    @Nullable
+    synchronized Chunk getReceivedChunk(final long offset) {
+        final var chunk = chunks.get(offset);
+
+        return chunk != null && chunk.received ? chunk : null;
+    }
+
+    synchronized void close(final boolean requireComplete) {
+        if (closed) {
+            throw new UploadSessionConflictException(UploadSessionErrorConstants.UPLOAD_SESSION_CLOSED_ERROR);
+        }
+
+        if (requireComplete && (pendingChunks > 0 || receivedLength != content.getLength())) {
+            throw new BadRequestException(UploadSessionErrorConstants.UPLOAD_INCOMPLETE_ERROR);
+        }
+
+        closed = true;
+    }
+
+    // lets the client retry a commit that failed before it consumed the content.
+    synchronized void reopen() {
+        closed = false;
+        lastAccessTime = Instant.now();
+    }
+
+    // closes the session if it has been idle since the deadline.
+    synchronized boolean expire(@NotNull final Instant deadline) {
+        if (closed || pendingChunks > 0 || lastAccessTime.isAfter(deadline)) {
+            return false;
+        }
+
+        closed = true;
+
+        return true;
+    }
+
+    @NotNull
+    synchronized List<UploadSessionChunkDto> getReceivedChunks() {
+        final var receivedChunks = new ArrayList<UploadSessionChunkDto>();
+
+        for (final var chunk : chunks.values()) {
+            if (chunk.received) {
+                receivedChunks.add(new UploadSessionChunkDto(chunk.number, chunk.offset, chunk.length));
+            }
+        }
+
+        return receivedChunks;
+    }
+
+    synchronized long getReceivedLength() {
+        return receivedLength;
+    }
+
+    @NotNull
+    String getId() {
+        return id;
+    }
+
+    @NotNull
+    Instant getCreationTime() {
+        return creationTime;
+    }
+
+    @NotNull
+    String getGroup() {
+        return group;
+    }
+
+    @NotNull
+    String getName() {
+        return name;
+    }
+
+    @NotNull
+    UploadContent getContent() {
+        return content;
+    }
+
+    @NotNull
+    ReentrantLock getDigestLock() {
+        return digestLock;
+    }
+
+    @NotNull
+    MessageDigest getDigest() {
+        return digest;
+    }
+
+    void setDigest(@NotNull final MessageDigest digest) {
+        this.digest = digest;
+    }
+
+    long getDigestedLength() {
+        return digestedLength;
+    }
+
+    void setDigestedLength(final long digestedLength) {
+        this.digestedLength = digestedLength;
+    }
+
+    static final class Chunk {
+
+        private final int number;
+
+        private final long offset;
+
+        private final long length;
+
+        private boolean received;
+
+        private Chunk(final int number, final long offset, final long length) {
+            this.number = number;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        long getOffset() {
+            return offset;
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        long getEnd() {
+            return offset + length;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2022 Hole project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.d1s.hole.service.impl;
+
+import dev.d1s.advice.exception.BadRequestException;
+import dev.d1s.advice.exception.NotFoundException;
+import dev.d1s.hole.accessor.ObjectStorageAccessor;
+import dev.d1s.hole.constant.error.UploadSessionErrorConstants;
+import dev.d1s.hole.dto.common.EntityWithDto;
+import dev.d1s.hole.dto.storageObject.StorageObjectDto;
+import dev.d1s.hole.dto.uploadSession.UploadSessionDto;
+import dev.d1s.hole.entity.storageObject.StorageObject;
+import dev.d1s.hole.properties.StorageConfigurationProperties;
+import dev.d1s.hole.service.UploadSessionService;
+import dev.d1s.hole.service.storageObject.StorageObjectGroupService;
+import dev.d1s.hole.service.storageObject.StorageObjectService;
+import dev.d1s.hole.util.FileNameUtils;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+// The sessions are kept in memory, the upload contents left by the previous run are removed by the accessor.
+// The digest is computed while the chunks are received in order, the chunks received ahead of the digested
+// prefix are read back once the gap before them is filled.
+@Service
+public class UploadSessionServiceImpl implements UploadSessionService, InitializingBean, DisposableBean {
+
+    private static final Logger log = LogManager.getLogger();
+
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
+    private static final Duration EXPIRATION_CHECK_INTERVAL = Duration.ofMinutes(1);
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    private ObjectStorageAccessor objectStorageAccessor;
+
+    private StorageObjectService storageObjectService;
+
+    private StorageObjectGroupService storageObjectGroupService;
+
+    private StorageConfigurationProperties properties;
+
+    private TaskScheduler taskScheduler;
+
+    @Nullable
+    private ScheduledFuture<?> expiration;
+
+    @NotNull
+    @Override
+    public UploadSessionDto createSession(
+            @NotNull final String group,
+            @Nullable final String name,
+            final long contentLength
+    ) {
+        if (contentLength <= 0) {
+            throw new BadRequestException(UploadSessionErrorConstants.CONTENT_LENGTH_NOT_POSITIVE_ERROR);
+        }
+
+        final var filename = FileNameUtils.sanitizeAndCheck(name);
+
+        // fails early if the group does not exist.
+        storageObjectGroupService.getGroup(group, false);
+
+        final var session = new UploadSession(
+                UUID.randomUUID().toString().replace("-", ""),
+                group,
+                filename,
+                objectStorageAccessor.createUploadContent(contentLength)
+        );
+
+        sessions.put(session.getId(), session);
+
+        log.debug("Created upload session {} for {} bytes", session.getId(), contentLength);
+
+        return this.convertToDto(session);
+    }
+
+    @NotNull
+    @Override
+    public UploadSessionDto getSession(@NotNull final String id) {
+        return this.convertToDto(this.findSession(id));
+    }
+
+    @NotNull
+    @Override
+    public UploadSessionDto writeChunk(
+            @NotNull final String id,
+            final int number,
+            final long offset,
+            final long length,
+            @NotNull final InputStream content
+    ) {
+        final var session = this.findSession(id);
+
+        if (number < 0 || offset < 0 || length <= 0 || offset + length > session.getContent().getLength()) {
+            throw new BadRequestException(UploadSessionErrorConstants.CHUNK_OUT_OF_BOUNDS_ERROR);
+        }
+
+        final var chunk = session.reserveChunk(number, offset, length);
+
+        try {
+            this.writeChunk(session, chunk, content);
+        } catch (final EOFException e) {
+            session.cancelChunk(chunk);
+
+            throw new BadRequestException(UploadSessionErrorConstants.CHUNK_TRUNCATED_ERROR);
+        } catch (final IOException e) {
+            session.cancelChunk(chunk);
+
+            objectStorageAccessor.processIoException(e);
+        } catch (final RuntimeException e) {
+            session.cancelChunk(chunk);
+
+            throw e;
+        }
+
+        session.completeChunk(chunk);
+
+        log.debug("Received chunk {} of upload session {}: {}", number, id, chunk.getLength());
+
+        this.digestReceivedChunks(session, false);
+
+        return this.convertToDto(session);
+    }
+
+    @NotNull
+    @Override
+    public EntityWithDto<StorageObject, StorageObjectDto> commitSession(@NotNull final String id) {
+        final var session = this.findSession(id);
+
+        session.close(true);
+
+        final EntityWithDto<StorageObject, StorageObjectDto> createdObject;
+
+        try {
+            this.digestReceivedChunks(session, true);
+
+            // the digest of the session is kept intact for a retry.
+            final var digest = Hex.encodeHexString(this.copyDigest(session.getDigest()).digest());
+
+            createdObject = storageObjectService.createObject(
+                    session.getContent(),
+                    digest,
+                    session.getGroup(),
+                    session.getName()
+            );
+        } catch (final RuntimeException e) {
+            // the session is only removed if the failed commit consumed its content.
+            if (session.getContent().isAvailable()) {
+                session.reopen();
+            } else {
+                this.removeSession(session);
+            }
+
+            throw e;
+        }
+
+        // the content left in the upload if it was deduplicated, or nothing if it was moved into place.
+        this.removeSession(session);
+
+        log.debug("Committed upload session {}: {}", id, createdObject.entity());
+
+        return createdObject;
+    }
+
+    @Override
+    public void abortSession(@NotNull final String id) {
+        final var session = this.findSession(id);
+
+        session.close(false);
+
+        this.removeSession(session);
+
+        log.debug("Aborted upload session {}", id);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        this.expiration = taskScheduler.scheduleWithFixedDelay(this::expireSessions, EXPIRATION_CHECK_INTERVAL);
+    }
+
+    @Override
+    public void destroy() {
+        if (expiration != null) {
+            expiration.cancel(false);
+        }
+    }
+
+    @Autowired
+    public void setObjectStorageAccessor(final ObjectStorageAccessor objectStorageAccessor) {
+        this.objectStorageAccessor = objectStorageAccessor;
+    }
+
+    @Autowired
+    public void setStorageObjectService(final StorageObjectService storageObjectService) {
+        this.storageObjectService = storageObjectService;
+    }
+
+    @Autowired
+    public void setStorageObjectGroupService(final StorageObjectGroupService storageObjectGroupService) {
+        this.storageObjectGroupService = storageObjectGroupService;
+    }
+
+    @Autowired
+    public void setProperties(final StorageConfigurationProperties properties) {
+        this.properties = properties;
+    }
+
+    @Autowired
+    public void setTaskScheduler(final TaskScheduler taskScheduler) {
+        this.taskScheduler = taskScheduler;
+    }
+
+    @NotNull
+    private UploadSession findSession(@NotNull final String id) {
+        final var session = sessions.get(id);
+
+        if (session == null) {
+            throw new NotFoundException(UploadSessionErrorConstants.UPLOAD_SESSION_NOT_FOUND_ERROR.formatted(id));
+        }
+
+        return session;
+    }
+
+    private void writeChunk(
+            @NotNull final UploadSession session,
+            @NotNull final UploadSession.Chunk chunk,
+            @NotNull final InputStream in
+    ) throws IOException {
+        final var content = session.getContent();
+        final var digestLock = session.getDigestLock();
+
+        // the chunk continuing the digested prefix is digested as it is written,
+        // so the sequential uploads are never read back.
+        if (digestLock.tryLock()) {
+            try {
+                if (session.getDigestedLength() == chunk.getOffset()) {
+                    final var snapshot = this.copyDigest(session.getDigest());
+
+                    try {
+                        content.write(chunk.getOffset(), new DigestInputStream(in, session.getDigest()), chunk.getLength());
+                    } catch (final IOException | RuntimeException e) {
+                        session.setDigest(snapshot);
+
+                        throw e;
+                    }
+
+                    session.setDigestedLength(chunk.getEnd());
+
+                    return;
+                }
+            } finally {
+                digestLock.unlock();
+            }
+        }
+
+        content.write(chunk.getOffset(), in, chunk.getLength());
+    }
+
+    private void digestReceivedChunks(@NotNull final UploadSession session, final boolean wait) {
+        final var digestLock = session.getDigestLock();
+
+        if (wait) {
+            digestLock.lock();
+        } else if (!digestLock.tryLock()) {
+            // the digest is being advanced by another request.
+            return;
+        }
+
+        try {
+            UploadSession.Chunk chunk;
+
+            while ((chunk = session.getReceivedChunk(session.getDigestedLength())) != null) {
+                final var digest = session.getDigest();
+                final var buffer = new byte[DIGEST_BUFFER_SIZE];
+
+                try (final var in = session.getContent().createInputStream(chunk.getOffset(), chunk.getLength())) {
+                    int read;
+
+                    while ((read = in.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                    }
+                } catch (final IOException e) {
+                    objectStorageAccessor.processIoException(e);
+                }
+
+                session.setDigestedLength(chunk.getEnd());
+            }
+        } finally {
+            digestLock.unlock();
+        }
+    }
+
+    @NotNull
+    private MessageDigest copyDigest(@NotNull final MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (final CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void expireSessions() {
+        final var deadline = Instant.now().minus(properties.getUploadSessionTtl());
+
+        for (final var session : sessions.values()) {
+            if (session.expire(deadline)) {
+                this.removeSession(session);
+
+                log.debug("Expired upload session {}", session.getId());
+            }
+        }
+    }
+
+    private void removeSession(@NotNull final UploadSession session) {
+        sessions.remove(session.getId());
+
+        try {
+            objectStorageAccessor.discardUploadContent(session.getContent());
+        } catch (final RuntimeException e) {
+            log.warn("Could not discard the content of upload session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    @NotNull
+    private UploadSessionDto convertToDto(@NotNull final UploadSession session) {
+        return new UploadSessionDto(
+                session.getId(),
+                session.getCreationTime(),
+                session.getName(),
+                session.getGroup(),
+                session.getContent().getLength(),
+                session.getReceivedLength(),
+                session.getReceivedChunks()
+        );
+    }
+}
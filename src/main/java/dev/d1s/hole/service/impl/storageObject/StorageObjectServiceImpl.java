@@ -18,20 +18,29 @@ package dev.d1s.hole.service.impl.storageObject;
 
 import dev.d1s.advice.exception.BadRequestException;
 import dev.d1s.advice.exception.NotFoundException;
+import dev.d1s.hole.accessor.ObjectHandle;
 import dev.d1s.hole.accessor.ObjectStorageAccessor;
+import dev.d1s.hole.accessor.UploadContent;
+import dev.d1s.hole.codec.CompressionCodec;
 import dev.d1s.hole.constant.contentDisposition.ContentDispositionConstants;
 import dev.d1s.hole.constant.error.EncryptionErrorConstants;
 import dev.d1s.hole.constant.error.storageObject.StorageObjectErrorConstants;
 import dev.d1s.hole.constant.longPolling.StorageObjectLongPollingConstants;
+import dev.d1s.hole.constant.range.ByteRangeConstants;
 import dev.d1s.hole.dto.common.EntityUpdatedEventData;
 import dev.d1s.hole.dto.common.EntityWithDto;
 import dev.d1s.hole.dto.common.EntityWithDtoSet;
+import dev.d1s.hole.dto.storageObject.StorageObjectContentData;
 import dev.d1s.hole.dto.storageObject.StorageObjectDto;
 import dev.d1s.hole.entity.storageObject.StorageObject;
 import dev.d1s.hole.repository.StorageObjectRepository;
+import dev.d1s.hole.service.CompressionService;
 import dev.d1s.hole.service.EncryptionService;
 import dev.d1s.hole.service.LockService;
 import dev.d1s.hole.service.MetadataService;
+import dev.d1s.hole.service.ObjectAccessService;
+import dev.d1s.hole.service.ObjectCacheService;
+import dev.d1s.hole.service.StorageBlobService;
 import dev.d1s.hole.service.storageObject.StorageObjectGroupService;
 import dev.d1s.hole.service.storageObject.StorageObjectService;
 import dev.d1s.hole.util.FileNameUtils;
@@ -40,6 +49,8 @@ import dev.d1s.teabag.dto.DtoConverter;
 import dev.d1s.teabag.dto.DtoSetConverterFacade;
 import dev.d1s.teabag.dto.util.DtoConverterExtKt;
 import dev.d1s.teabag.dto.util.DtoSetConverterFacadeExtKt;
+import io.undertow.servlet.spec.ServletOutputStreamImpl;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
@@ -54,30 +65,48 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.crypto.BadPaddingException;
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
+import java.util.zip.ZipException;
 
 @Service
 public class StorageObjectServiceImpl implements StorageObjectService, InitializingBean {
 
+    private static final int CONTENT_TYPE_DETECTION_LIMIT = 64 * 1024;
+
     private static final Logger log = LogManager.getLogger();
 
     private StorageObjectRepository storageObjectRepository;
 
     private DtoConverter<StorageObjectDto, StorageObject> storageObjectDtoConverter;
 
-
     private DtoSetConverterFacade<StorageObjectDto, StorageObject> storageObjectDtoSetConverter;
 
     private ObjectStorageAccessor objectStorageAccessor;
@@ -94,6 +123,14 @@ public class StorageObjectServiceImpl implements StorageObjectService, Initializ
 
     private StorageObjectGroupService storageObjectGroupService;
 
+    private StorageBlobService storageBlobService;
+
+    private CompressionService compressionService;
+
+    private ObjectCacheService objectCacheService;
+
+    private ObjectAccessService objectAccessService;
+
     private StorageObjectServiceImpl storageObjectServiceImpl;
 
     @NotNull
@@ -122,12 +159,57 @@ public class StorageObjectServiceImpl implements StorageObjectService, Initializ
     public void writeRawObjectToWeb(
             @NotNull final String id,
             @Nullable final String encryptionKey,
+            @NotNull final HttpServletRequest request,
             @NotNull final HttpServletResponse response,
             @Nullable final String contentDisposition
     ) {
-        final var object = storageObjectServiceImpl.getObject(id, false).entity();
+        final StorageObject object;
+
+        lockService.lockRead(id);
+
+        var locked = true;
+
+        try {
+            object = storageObjectServiceImpl.getObject(id, false).entity();
+
+            objectAccessService.recordAccess(object);
+
+            final var handle = objectCacheService.openObject(object);
+
+            // the lock only covers resolving the object and opening its content when the backend
+            // replaces the content atomically, since the opened content stays readable then.
+            // otherwise it is held for the whole transfer.
+            if (objectStorageAccessor.supportsAtomicReplace()) {
+                lockService.unlockRead(id);
+
+                locked = false;
+            }
+
+            try {
+                this.writeRawObjectToWeb(object, handle, encryptionKey, request, response, contentDisposition);
+            } finally {
+                objectStorageAccessor.closeObject(handle);
+            }
+        } finally {
+            if (locked) {
+                lockService.unlockRead(id);
+            }
+        }
+
+        log.debug("Read raw storage object: {}", object);
+    }
+
+    private void writeRawObjectToWeb(
+            final StorageObject object,
+            final ObjectHandle handle,
+            final String encryptionKey,
+            final HttpServletRequest request,
+            final HttpServletResponse response,
+            final String contentDisposition
+    ) {
         final var encrypted = object.isEncrypted();
         final var contentLength = object.getContentLength();
+        final var codec = compressionService.getCodec(object.getCodec());
 
         if (encrypted && StringUtils.isBlank(encryptionKey)) {
             throw new BadRequestException(EncryptionErrorConstants.ENCRYPTION_KEY_NOT_PRESENT_ERROR);
@@ -138,6 +220,25 @@ public class StorageObjectServiceImpl implements StorageObjectService, Initializ
             return;
         }
 
+        List<HttpRange> ranges = List.of();
+
+        // compressed objects and the objects encrypted as a single stream can only be decoded as a whole,
+        // so the range requests are ignored for them.
+        if (this.isRangeSupported(object)) {
+            try {
+                ranges = this.getRequestedRanges(object, request);
+            } catch (final IllegalArgumentException e) {
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+
+                response.setHeader(
+                        HttpHeaders.CONTENT_RANGE,
+                        ByteRangeConstants.UNSATISFIED_CONTENT_RANGE_FORMAT.formatted(contentLength)
+                );
+
+                return;
+            }
+        }
+
         final ServletOutputStream out;
 
         try {
@@ -146,70 +247,32 @@ public class StorageObjectServiceImpl implements StorageObjectService, Initializ
             throw new RuntimeException(e);
         }
 
-        InputStream in = null;
-
         try {
-            lockService.lock(id);
-
-            in = objectStorageAccessor.createInputStream(object);
-
-            if (encrypted) {
-                in = encryptionService.createDecryptedInputStream(in, encryptionKey);
-            }
-
-            var headersConfigured = false;
-
-            final var buffer = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
-
-            while (true) {
-                final var read = in.read(buffer, 0, IOUtils.DEFAULT_BUFFER_SIZE);
-
-                if (!headersConfigured) {
-                    response.setContentType(object.getContentType());
-
-                    response.setContentLengthLong(contentLength);
-
-                    response.setHeader(
-                            HttpHeaders.CONTENT_DISPOSITION,
-                            ContentDisposition.builder(
-                                            contentDisposition != null
-                                                    ? contentDisposition
-                                                    : ContentDispositionConstants.DEFAULT_CONTENT_DISPOSITION_TYPE
-                                    )
-                                    .filename(object.getName())
-                                    .build()
-                                    .toString()
-                    );
-
-                    response.setHeader(HttpHeaders.ETAG, object.getDigest());
-
-                    headersConfigured = true;
-                }
-
-                if (read != -1) {
-                    out.write(buffer, 0, read);
-                } else {
-                    break;
-                }
+            if (codec != null && !encrypted && compressionService.isEncodingAccepted(
+                    request.getHeader(HttpHeaders.ACCEPT_ENCODING),
+                    codec
+            )) {
+                this.transferEncodedObject(object, handle, codec, response, out, contentDisposition);
+            } else if (!ranges.isEmpty()) {
+                this.transferObjectRanges(object, handle, encryptionKey, ranges, response, out, contentDisposition);
+            } else if (encrypted || codec != null) {
+                this.writeDecodedObject(object, handle, codec, encryptionKey, response, out, contentDisposition);
+            } else {
+                this.transferObject(object, handle, response, out, contentDisposition);
             }
         } catch (final IOException e) {
             if (e instanceof StreamIntegrityException) {
                 throw encryptionService.createEncryptionException(e);
             } else if (e.getCause() instanceof BadPaddingException) {
                 throw encryptionService.createEncryptionException(e.getCause());
+            } else if (encrypted && e instanceof ZipException) {
+                // a wrong key yields garbage that the codec fails to decompress.
+                throw encryptionService.createEncryptionException(e);
             }
 
             log.warn("Failed to write to response: {}. " +
                     "Perhaps the client disconnected without waiting for the completion.", e.getMessage());
-        } finally {
-            if (in != null) {
-                objectStorageAccessor.closeInputStream(in);
-            }
-
-            lockService.unlock(id);
         }
-
-        log.debug("Read raw storage object: {}", object);
     }
 
     @NotNull
@@ -241,32 +304,139 @@ public class StorageObjectServiceImpl implements StorageObjectService, Initializ
     ) {
         this.checkContent(content, encryptionKey);
 
-        final var filename = this.getName(content, name);
-        final var contentSize = content.getSize();
+        try (final var in = content.getInputStream()) {
+            return storageObjectServiceImpl.createObject(in, group, encryptionKey, this.getName(content, name));
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    @Transactional
+    public EntityWithDto<StorageObject, StorageObjectDto> createObject(
+            @NotNull final InputStream content,
+            @NotNull final String group,
+            @Nullable final String encryptionKey,
+            @Nullable final String name
+    ) {
+        final var filename = FileNameUtils.sanitizeAndCheck(name);
+
+        final var in = this.checkContent(content, encryptionKey);
 
         final var objectToSave = new StorageObject(
                 filename,
                 storageObjectGroupService.getGroup(group, false).entity(),
                 !StringUtils.isBlank(encryptionKey),
-                this.createSha256Digest(content),
-                this.detectContentType(content, filename),
-                contentSize,
+                null,
+                null,
+                0L,
                 new HashSet<>()
         );
 
         // yeah... this is reasonable
         objectToSave.setCreationTime(Instant.now());
 
-        final StorageObject object = storageObjectRepository.save(objectToSave);
+        // the identifier is assigned up front, so the content is written before the object
+        // is saved for the first time, along with its digest and content type.
+        objectToSave.setId(UUID.randomUUID().toString().replace("-", ""));
 
-        try {
-            lockService.lock(object);
+        final var out = objectStorageAccessor.createOutputStream(objectToSave);
+
+        final var contentData = this.writeObject(out, encryptionKey, in, filename);
+
+        this.discardUnlessCommitted(out);
+
+        objectToSave.setDigest(contentData.digest());
+        objectToSave.setContentType(contentData.contentType());
+        objectToSave.setContentLength(contentData.contentLength());
+        objectToSave.setCodec(contentData.codec());
+        objectToSave.setStoredDigest(contentData.storedDigest());
+        objectToSave.setEncryptionFormat(contentData.encryptionFormat());
+        objectToSave.setEncryptedDataKey(contentData.encryptedDataKey());
+
+        final var object = storageObjectRepository.save(objectToSave);
 
-            this.writeObject(object, encryptionKey, content);
+        this.lockWriteUntilCompletion(object);
+
+        object.setBlobDigest(this.commitContent(out, encryptionKey, contentData));
+
+        storageObjectRepository.save(object);
+
+        final var objectDto = storageObjectDtoConverter.convertToDto(object);
+
+        publisher.publish(
+                StorageObjectLongPollingConstants.STORAGE_OBJECT_CREATED_GROUP,
+                object.getId(),
+                objectDto
+        );
+
+        log.debug("Created storage object: {}", object);
+
+        return new EntityWithDto<>(object, objectDto);
+    }
+
+    // The content is already written and digested by the upload session, so only its prefix
+    // is read for the content type detection. The sessions don't support encryption and compression.
+    @NotNull
+    @Override
+    @Transactional
+    public EntityWithDto<StorageObject, StorageObjectDto> createObject(
+            @NotNull final UploadContent content,
+            @NotNull final String digest,
+            @NotNull final String group,
+            @NotNull final String name
+    ) {
+        final var filename = FileNameUtils.sanitizeAndCheck(name);
+
+        final var contentLength = content.getLength();
+
+        // assigned unless the accessor throws on the read failure.
+        String contentType = null;
+
+        final var in = content.createInputStream(0L, Math.min(contentLength, CONTENT_TYPE_DETECTION_LIMIT));
+
+        try {
+            contentType = tika.detect(in, filename);
+        } catch (final IOException e) {
+            objectStorageAccessor.processIoException(e);
         } finally {
-            lockService.unlock(object);
+            objectStorageAccessor.closeInputStream(in);
         }
 
+        final var objectToSave = new StorageObject(
+                filename,
+                storageObjectGroupService.getGroup(group, false).entity(),
+                false,
+                digest,
+                contentType,
+                contentLength,
+                new HashSet<>()
+        );
+
+        objectToSave.setCreationTime(Instant.now());
+
+        // the upload is stored as received.
+        objectToSave.setStoredDigest(digest);
+
+        final var object = storageObjectRepository.save(objectToSave);
+
+        final var out = objectStorageAccessor.completeUploadContent(content, object);
+
+        this.discardUnlessCommitted(out);
+
+        this.lockWriteUntilCompletion(object);
+
+        object.setBlobDigest(
+                this.commitContent(
+                        out,
+                        null,
+                        new StorageObjectContentData(digest, contentType, contentLength, null, digest, null, null)
+                )
+        );
+
+        storageObjectRepository.save(object);
+
         final var objectDto = storageObjectDtoConverter.convertToDto(object);
 
         publisher.publish(
@@ -275,7 +445,7 @@ public class StorageObjectServiceImpl implements StorageObjectService, Initializ
                 objectDto
         );
 
-        log.debug("Created storage object: {}", object);
+        log.debug("Created storage object from an upload session: {}", object);
 
         return new EntityWithDto<>(object, objectDto);
     }
@@ -324,59 +494,120 @@ public class StorageObjectServiceImpl implements StorageObjectService, Initializ
     ) {
         this.checkContent(content, encryptionKey);
 
+        try (final var in = content.getInputStream()) {
+            storageObjectServiceImpl.overwriteObject(id, in, encryptionKey, this.getName(content, name));
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    @Transactional
+    public void overwriteObject(
+            @NotNull final String id,
+            @NotNull final InputStream content,
+            @Nullable final String encryptionKey,
+            @Nullable final String name
+    ) {
+        final var in = this.checkContent(content, encryptionKey);
+
+        // the object is loaded under the lock, so the content it refers to can't be replaced
+        // by a concurrent overwrite before this one is committed.
+        this.lockWriteUntilCompletion(id);
+
         final var object = storageObjectServiceImpl.getObject(id, false).entity();
 
         final var oldObjectDto = storageObjectDtoConverter.convertToDto(object);
 
         final var encryptionUsed = !StringUtils.isBlank(encryptionKey);
 
-        final var digest = this.createSha256Digest(content);
+        final var objectName = name != null
+                ? FileNameUtils.sanitizeAndCheck(name)
+                : object.getName();
 
-        final var objectName = this.getName(content, name);
+        final var out = objectStorageAccessor.createOutputStream(object);
 
-        final var contentType = this.detectContentType(content, objectName);
+        final var contentData = this.writeObject(out, encryptionKey, in, objectName);
 
-        final var contentLength = content.getSize();
+        this.discardUnlessCommitted(out);
 
-        try {
-            lockService.lock(object);
+        final var oldBlobDigest = object.getBlobDigest();
 
-            var needsUpdate = false;
+        final var blobDigest = this.commitContent(out, encryptionKey, contentData);
 
-            if (encryptionUsed != object.isEncrypted()) {
-                object.setEncrypted(encryptionUsed);
-                needsUpdate = true;
-            }
+        objectCacheService.invalidate(object);
 
-            if (!digest.equals(object.getDigest())) {
-                object.setDigest(digest);
-                needsUpdate = true;
-            }
+        // the content moved from the object's own file to a blob, so the file is no longer needed.
+        if (oldBlobDigest == null && blobDigest != null) {
+            objectStorageAccessor.deleteObject(object);
+        }
 
-            if (!objectName.equals(object.getName())) {
-                object.setName(objectName);
-                needsUpdate = true;
-            }
+        final var digest = contentData.digest();
 
-            if (!contentType.equals(object.getContentType())) {
-                object.setContentType(contentType);
-                needsUpdate = true;
-            }
+        final var contentType = contentData.contentType();
 
-            if (contentLength != object.getContentLength()) {
-                object.setContentLength(contentLength);
-                needsUpdate = true;
-            }
+        final var contentLength = contentData.contentLength();
 
-            if (needsUpdate) {
-                storageObjectRepository.save(object);
-            }
+        final var codec = contentData.codec();
 
-            objectStorageAccessor.deleteObject(object);
+        var needsUpdate = false;
 
-            this.writeObject(object, encryptionKey, content);
-        } finally {
-            lockService.unlock(object);
+        if (encryptionUsed != object.isEncrypted()) {
+            object.setEncrypted(encryptionUsed);
+            needsUpdate = true;
+        }
+
+        if (!digest.equals(object.getDigest())) {
+            object.setDigest(digest);
+            needsUpdate = true;
+        }
+
+        if (!objectName.equals(object.getName())) {
+            object.setName(objectName);
+            needsUpdate = true;
+        }
+
+        if (!contentType.equals(object.getContentType())) {
+            object.setContentType(contentType);
+            needsUpdate = true;
+        }
+
+        if (contentLength != object.getContentLength()) {
+            object.setContentLength(contentLength);
+            needsUpdate = true;
+        }
+
+        if (!Objects.equals(codec, object.getCodec())) {
+            object.setCodec(codec);
+            needsUpdate = true;
+        }
+
+        if (contentData.encryptionFormat() != object.getEncryptionFormat()) {
+            object.setEncryptionFormat(contentData.encryptionFormat());
+            needsUpdate = true;
+        }
+
+        if (!Objects.equals(contentData.encryptedDataKey(), object.getEncryptedDataKey())) {
+            object.setEncryptedDataKey(contentData.encryptedDataKey());
+            needsUpdate = true;
+        }
+
+        if (!contentData.storedDigest().equals(object.getStoredDigest())) {
+            object.setStoredDigest(contentData.storedDigest());
+            needsUpdate = true;
+        }
+
+        if (!Objects.equals(blobDigest, oldBlobDigest)) {
+            object.setBlobDigest(blobDigest);
+            needsUpdate = true;
+        }
+
+        if (needsUpdate) {
+            storageObjectRepository.save(object);
+        }
+
+        if (oldBlobDigest != null) {
+            storageBlobService.releaseBlob(oldBlobDigest);
         }
 
         publisher.publish(
@@ -391,21 +622,55 @@ public class StorageObjectServiceImpl implements StorageObjectService, Initializ
         log.debug("Overwrote storage object: {}", object);
     }
 
+    // only the wrapped data key is replaced, the content is left as is.
+    @Override
+    @Transactional
+    public void rekeyObject(
+            @NotNull final String id,
+            @NotNull final String encryptionKey,
+            @NotNull final String newEncryptionKey
+    ) {
+        this.lockWriteUntilCompletion(id);
+
+        final var object = storageObjectServiceImpl.getObject(id, false).entity();
+
+        if (!object.isEncrypted()) {
+            throw new BadRequestException(EncryptionErrorConstants.OBJECT_NOT_ENCRYPTED_ERROR);
+        }
+
+        final var encryptedDataKey = object.getEncryptedDataKey();
+
+        if (encryptedDataKey == null) {
+            throw new BadRequestException(EncryptionErrorConstants.DATA_KEY_NOT_PRESENT_ERROR);
+        }
+
+        object.setEncryptedDataKey(
+                encryptionService.rewrapDataKey(encryptedDataKey, encryptionKey, newEncryptionKey)
+        );
+
+        storageObjectRepository.save(object);
+
+        log.debug("Rekeyed storage object: {}", object);
+    }
+
     @Override
     @Transactional
     public void deleteObject(@NotNull final String id) {
+        this.lockWriteUntilCompletion(id);
+
         final var object = storageObjectServiceImpl.getObject(id, true);
         final var entity = object.entity();
 
         storageObjectRepository.delete(entity);
 
-        try {
-            lockService.lock(entity);
+        final var blobDigest = entity.getBlobDigest();
 
+        objectCacheService.invalidate(entity);
+
+        if (blobDigest != null) {
+            storageBlobService.releaseBlob(blobDigest);
+        } else {
             objectStorageAccessor.deleteObject(entity);
-        } finally {
-            lockService.unlock(entity);
-            lockService.removeLock(entity);
         }
 
         publisher.publish(
@@ -417,43 +682,503 @@ public class StorageObjectServiceImpl implements StorageObjectService, Initializ
         log.debug("Deleted storage object: {}", object);
     }
 
-    private void writeObject(
-            final StorageObject object,
+    // The write lock is released once the transaction completes, so no reader finds the published
+    // content along with the row of the previous one, and no other writer commits in between.
+    private void lockWriteUntilCompletion(final StorageObject object) {
+        this.lockWriteUntilCompletion(Objects.requireNonNull(object.getId()));
+    }
+
+    private void lockWriteUntilCompletion(final String id) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("The write lock of " + id + " must be taken within a transaction.");
+        }
+
+        lockService.lockWrite(id);
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+            @Override
+            public void afterCompletion(final int status) {
+                lockService.unlockWrite(id);
+            }
+        });
+    }
+
+    // The staged content is discarded whichever step fails after the staging. Once the content
+    // is committed, the discarding finds nothing to remove.
+    private void discardUnlessCommitted(final OutputStream out) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+            @Override
+            public void afterCompletion(final int status) {
+                if (status == STATUS_COMMITTED) {
+                    return;
+                }
+
+                try {
+                    objectStorageAccessor.discardOutputStream(out);
+                } catch (final RuntimeException e) {
+                    log.warn("Failed to discard the staged content: {}", e.getMessage());
+                }
+            }
+        });
+    }
+
+    private StorageObjectContentData writeObject(
+            final OutputStream storageOut,
             final String encryptionKey,
-            final MultipartFile content
+            final InputStream content,
+            final String filename
     ) {
-        var out = objectStorageAccessor.createOutputStream(object);
+        try {
+            return this.copyContent(storageOut, encryptionKey, content, filename);
+        } catch (final RuntimeException e) {
+            objectStorageAccessor.discardOutputStream(storageOut);
 
-        try (final var in = content.getInputStream()) {
-            if (!StringUtils.isBlank(encryptionKey)) {
-                out = encryptionService.createEncryptedOutputStream(out, encryptionKey);
+            throw e;
+        }
+    }
+
+    // Unencrypted content is stored once per digest when the deduplication is enabled.
+    // Encrypted content is never shared since the ciphertexts differ even for the same plaintext.
+    // The codec is a part of the blob key because the stored bytes differ for every codec.
+    private String commitContent(
+            final OutputStream out,
+            final String encryptionKey,
+            final StorageObjectContentData contentData
+    ) {
+        if (storageBlobService.isDeduplicationEnabled() && StringUtils.isBlank(encryptionKey)) {
+            final var codec = contentData.codec();
+
+            final var digest = codec != null
+                    ? contentData.digest() + "-" + codec
+                    : contentData.digest();
+
+            storageBlobService.commitBlob(out, digest);
+
+            return digest;
+        }
+
+        objectStorageAccessor.commitOutputStream(out);
+
+        return null;
+    }
+
+    private StorageObjectContentData copyContent(
+            final OutputStream storageOut,
+            final String encryptionKey,
+            final InputStream content,
+            final String filename
+    ) {
+        final var digest = DigestUtils.getSha256Digest();
+        final var storedDigest = DigestUtils.getSha256Digest();
+
+        // the stored bytes are digested too, so the scrubber can verify them without the encryption key.
+        OutputStream out = new DigestOutputStream(storageOut, storedDigest);
+
+        final String contentType;
+        final CompressionCodec codec;
+        final long contentLength;
+
+        final var encryptionFormat = !StringUtils.isBlank(encryptionKey)
+                ? encryptionService.getEncryptionFormat()
+                : null;
+
+        // the content is encrypted with a random data key, so changing the encryption key only rewraps it.
+        final var encryptedDataKey = encryptionFormat != null
+                ? encryptionService.createDataKey(encryptionKey)
+                : null;
+
+        // the content is read exactly once: the digest is updated as the bytes are pulled from the source
+        // and the buffered prefix is used for the content type detection before being written to the storage.
+        try (final var in = new BufferedInputStream(
+                new DigestInputStream(content, digest),
+                CONTENT_TYPE_DETECTION_LIMIT
+        )) {
+            contentType = tika.detect(in, filename);
+
+            codec = compressionService.selectCodec(contentType);
+
+            if (encryptionFormat != null) {
+                out = encryptionService.createEncryptedOutputStream(out, encryptionKey, encryptedDataKey);
             }
 
-            IOUtils.copyLarge(in, out);
+            // the content is compressed before being encrypted, the ciphertext wouldn't shrink.
+            if (codec != null) {
+                out = codec.createCompressingOutputStream(out);
+            }
+
+            contentLength = IOUtils.copyLarge(in, out);
         } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
             objectStorageAccessor.closeOutputStream(out);
         }
+
+        // the compression and the encryption write their trailers on close.
+        return new StorageObjectContentData(
+                Hex.encodeHexString(digest.digest()),
+                contentType,
+                contentLength,
+                codec != null ? codec.getName() : null,
+                Hex.encodeHexString(storedDigest.digest()),
+                encryptionFormat,
+                encryptedDataKey
+        );
     }
 
-    private String createSha256Digest(final MultipartFile content) {
-        try (final var in = content.getInputStream()) {
-            return DigestUtils.sha256Hex(in);
-        } catch (final IOException e) {
-            throw new RuntimeException(e);
+    private void transferObject(
+            final StorageObject object,
+            final ObjectHandle handle,
+            final HttpServletResponse response,
+            final ServletOutputStream out,
+            final String contentDisposition
+    ) throws IOException {
+        this.configureHeaders(object, response, contentDisposition);
+
+        this.transferContent(handle, out);
+    }
+
+    // the stored bytes are already a valid content coding, so they are sent as is.
+    private void transferEncodedObject(
+            final StorageObject object,
+            final ObjectHandle handle,
+            final CompressionCodec codec,
+            final HttpServletResponse response,
+            final ServletOutputStream out,
+            final String contentDisposition
+    ) throws IOException {
+        final var contentEncoding = codec.getContentEncoding();
+
+        this.configureHeaders(object, response, contentDisposition);
+
+        response.setContentLengthLong(handle.getSize());
+
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+
+        response.setHeader(HttpHeaders.ETAG, object.getDigest() + "-" + contentEncoding);
+
+        this.transferContent(handle, out);
+    }
+
+    private void transferContent(final ObjectHandle handle, final ServletOutputStream out) throws IOException {
+        final var channel = objectStorageAccessor.supportsZeroCopy()
+                ? handle.getFileChannel()
+                : null;
+
+        if (channel == null) {
+            final var in = handle.createInputStream();
+
+            try {
+                IOUtils.copyLarge(in, out);
+            } finally {
+                objectStorageAccessor.closeInputStream(in);
+            }
+
+            return;
+        }
+
+        // Undertow hands the channel to sendfile, so the content never leaves the kernel.
+        if (out instanceof ServletOutputStreamImpl undertowOut) {
+            undertowOut.transferFrom(channel);
+        } else {
+            final var target = Channels.newChannel(out);
+            final var size = handle.getSize();
+
+            var position = 0L;
+
+            while (position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
         }
     }
 
-    private String detectContentType(final MultipartFile content, final String filename) {
+    private void transferObjectRanges(
+            final StorageObject object,
+            final ObjectHandle handle,
+            final String encryptionKey,
+            final List<HttpRange> ranges,
+            final HttpServletResponse response,
+            final ServletOutputStream out,
+            final String contentDisposition
+    ) throws IOException {
+        final var contentLength = object.getContentLength();
+
+        final var firstRange = ranges.get(0);
+
+        // the first range is opened before the headers are configured,
+        // so that a wrong encryption key or a corrupted chunk still results in an error response.
+        final var firstIn = this.openObjectRange(
+                object,
+                handle,
+                encryptionKey,
+                firstRange.getRangeStart(contentLength),
+                firstRange.getRangeEnd(contentLength)
+        );
+
         try {
-            return tika.detect(content.getInputStream(), filename);
-        } catch (IOException e) {
-            objectStorageAccessor.processIoException(e);
+            this.configureHeaders(object, response, contentDisposition);
+        } catch (final RuntimeException e) {
+            objectStorageAccessor.closeInputStream(firstIn);
 
-            // impossible to reach this point
-            throw new RuntimeException(e);
+            throw e;
+        }
+
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+
+        if (ranges.size() == 1) {
+            final var start = firstRange.getRangeStart(contentLength);
+            final var end = firstRange.getRangeEnd(contentLength);
+
+            response.setContentLengthLong(end - start + 1);
+
+            response.setHeader(
+                    HttpHeaders.CONTENT_RANGE,
+                    ByteRangeConstants.CONTENT_RANGE_FORMAT.formatted(start, end, contentLength)
+            );
+
+            this.transferObjectRange(firstIn, out);
+
+            return;
+        }
+
+        final var boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        final var partHeaders = new ArrayList<byte[]>(ranges.size());
+        final var closingBoundary = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        var bodyLength = (long) closingBoundary.length;
+
+        for (final var range : ranges) {
+            final var start = range.getRangeStart(contentLength);
+            final var end = range.getRangeEnd(contentLength);
+
+            final var partHeader = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + object.getContentType() + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": "
+                    + ByteRangeConstants.CONTENT_RANGE_FORMAT.formatted(start, end, contentLength) + "\r\n\r\n"
+            ).getBytes(StandardCharsets.US_ASCII);
+
+            partHeaders.add(partHeader);
+
+            bodyLength += partHeader.length + end - start + 1;
+        }
+
+        response.setContentType(ByteRangeConstants.MULTIPART_BYTERANGES_CONTENT_TYPE + boundary);
+
+        response.setContentLengthLong(bodyLength);
+
+        for (var i = 0; i < ranges.size(); i++) {
+            final var range = ranges.get(i);
+
+            out.write(partHeaders.get(i));
+
+            final var in = i == 0
+                    ? firstIn
+                    : this.openObjectRange(
+                    object,
+                    handle,
+                    encryptionKey,
+                    range.getRangeStart(contentLength),
+                    range.getRangeEnd(contentLength)
+            );
+
+            this.transferObjectRange(in, out);
+        }
+
+        out.write(closingBoundary);
+    }
+
+    private InputStream openObjectRange(
+            final StorageObject object,
+            final ObjectHandle handle,
+            final String encryptionKey,
+            final long start,
+            final long end
+    ) throws IOException {
+        final var length = end - start + 1;
+
+        if (!object.isEncrypted()) {
+            return handle.createInputStream(start, length);
+        }
+
+        // only the chunks covering the range are read and decrypted.
+        final var in = new PushbackInputStream(
+                encryptionService.createDecryptedInputStream(
+                        handle,
+                        encryptionKey,
+                        object.getEncryptedDataKey(),
+                        start,
+                        length
+                )
+        );
+
+        try {
+            final var firstByte = in.read();
+
+            if (firstByte != -1) {
+                in.unread(firstByte);
+            }
+        } catch (final IOException | RuntimeException e) {
+            objectStorageAccessor.closeInputStream(in);
+
+            throw e;
+        }
+
+        return in;
+    }
+
+    private void transferObjectRange(final InputStream in, final ServletOutputStream out) throws IOException {
+        try {
+            IOUtils.copyLarge(in, out);
+        } finally {
+            objectStorageAccessor.closeInputStream(in);
+        }
+    }
+
+    private List<HttpRange> getRequestedRanges(final StorageObject object, final HttpServletRequest request) {
+        final var rangeHeader = request.getHeader(HttpHeaders.RANGE);
+
+        if (rangeHeader == null || !this.isIfRangeSatisfied(object, request)) {
+            return List.of();
+        }
+
+        final List<HttpRange> ranges;
+
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (final IllegalArgumentException e) {
+            // malformed range headers are ignored as per RFC 7233.
+            return List.of();
+        }
+
+        final var contentLength = object.getContentLength();
+
+        var requestedLength = 0L;
+
+        for (final var range : ranges) {
+            final var start = range.getRangeStart(contentLength);
+
+            if (start >= contentLength) {
+                throw new IllegalArgumentException("The range start exceeds the content length.");
+            }
+
+            requestedLength += range.getRangeEnd(contentLength) - start + 1;
         }
+
+        if (requestedLength > contentLength) {
+            throw new IllegalArgumentException("The sum of all ranges exceeds the content length.");
+        }
+
+        return ranges;
+    }
+
+    private boolean isIfRangeSatisfied(final StorageObject object, final HttpServletRequest request) {
+        final var ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+
+        if (ifRange == null) {
+            return true;
+        }
+
+        // objects don't carry the modification date, so only the entity tag is validated.
+        final var digest = object.getDigest();
+
+        return ifRange.equals(digest) || ifRange.equals("\"" + digest + "\"");
+    }
+
+    private void writeDecodedObject(
+            final StorageObject object,
+            final ObjectHandle handle,
+            final CompressionCodec codec,
+            final String encryptionKey,
+            final HttpServletResponse response,
+            final ServletOutputStream out,
+            final String contentDisposition
+    ) throws IOException {
+        InputStream in = null;
+
+        try {
+            in = handle.createInputStream();
+
+            if (object.isEncrypted()) {
+                in = encryptionService.createDecryptedInputStream(
+                        in,
+                        encryptionKey,
+                        object.getEncryptedDataKey(),
+                        object.getEncryptionFormat()
+                );
+            }
+
+            if (codec != null) {
+                in = codec.createDecompressingInputStream(in);
+            }
+
+            var headersConfigured = false;
+
+            final var buffer = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
+
+            while (true) {
+                final var read = in.read(buffer, 0, IOUtils.DEFAULT_BUFFER_SIZE);
+
+                // headers are configured only after the first successful read
+                // so that a wrong encryption key or a corrupted content still results in an error response.
+                if (!headersConfigured) {
+                    this.configureHeaders(object, response, contentDisposition);
+
+                    headersConfigured = true;
+                }
+
+                if (read != -1) {
+                    out.write(buffer, 0, read);
+                } else {
+                    break;
+                }
+            }
+        } finally {
+            if (in != null) {
+                objectStorageAccessor.closeInputStream(in);
+            }
+        }
+    }
+
+    private void configureHeaders(
+            final StorageObject object,
+            final HttpServletResponse response,
+            final String contentDisposition
+    ) {
+        response.setContentType(object.getContentType());
+
+        response.setContentLengthLong(object.getContentLength());
+
+        response.setHeader(
+                HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.builder(
+                                contentDisposition != null
+                                        ? contentDisposition
+                                        : ContentDispositionConstants.DEFAULT_CONTENT_DISPOSITION_TYPE
+                        )
+                        .filename(object.getName())
+                        .build()
+                        .toString()
+        );
+
+        response.setHeader(HttpHeaders.ETAG, object.getDigest());
+
+        response.setHeader(
+                HttpHeaders.ACCEPT_RANGES,
+                this.isRangeSupported(object)
+                        ? ByteRangeConstants.BYTES_RANGE_UNIT
+                        : ByteRangeConstants.NONE_RANGE_UNIT
+        );
+
+        if (object.getCodec() != null) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+    }
+
+    private boolean isRangeSupported(final StorageObject object) {
+        return objectStorageAccessor.supportsRange()
+                && (!object.isEncrypted() || encryptionService.supportsRange(object.getEncryptionFormat()))
+                && object.getCodec() == null;
     }
 
     private void checkContent(final MultipartFile content, final String encryptionKey) {
@@ -462,6 +1187,29 @@ public class StorageObjectServiceImpl implements StorageObjectService, Initializ
         }
     }
 
+    private InputStream checkContent(final InputStream content, final String encryptionKey) {
+        if (encryptionKey == null) {
+            return content;
+        }
+
+        // the length of a streamed body is not known in advance, so the first byte is peeked instead.
+        final var in = new PushbackInputStream(content);
+
+        try {
+            final var firstByte = in.read();
+
+            if (firstByte == -1) {
+                throw new BadRequestException(EncryptionErrorConstants.NOTHING_TO_ENCRYPT_ERROR);
+            }
+
+            in.unread(firstByte);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return in;
+    }
+
     private String getName(final MultipartFile content, final String nameOverride) {
         final String name;
 
@@ -525,6 +1273,26 @@ public class StorageObjectServiceImpl implements StorageObjectService, Initializ
         this.storageObjectGroupService = storageObjectGroupService;
     }
 
+    @Autowired
+    public void setStorageBlobService(final StorageBlobService storageBlobService) {
+        this.storageBlobService = storageBlobService;
+    }
+
+    @Autowired
+    public void setCompressionService(final CompressionService compressionService) {
+        this.compressionService = compressionService;
+    }
+
+    @Autowired
+    public void setObjectCacheService(final ObjectCacheService objectCacheService) {
+        this.objectCacheService = objectCacheService;
+    }
+
+    @Autowired
+    public void setObjectAccessService(final ObjectAccessService objectAccessService) {
+        this.objectAccessService = objectAccessService;
+    }
+
     @Lazy
     @Autowired
     public void setStorageObjectServiceImpl(final StorageObjectServiceImpl storageObjectServiceImpl) {
@@ -16,6 +16,7 @@
 
 package dev.d1s.hole.service.storageObject;
 
+import dev.d1s.hole.accessor.UploadContent;
 import dev.d1s.hole.dto.common.EntityWithDto;
 import dev.d1s.hole.dto.common.EntityWithDtoSet;
 import dev.d1s.hole.dto.storageObject.StorageObjectDto;
@@ -24,7 +25,9 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.InputStream;
 
 public interface StorageObjectService {
 
@@ -37,6 +40,7 @@ public interface StorageObjectService {
     void writeRawObjectToWeb(
             @NotNull final String id,
             @Nullable final String encryptionKey,
+            @NotNull final HttpServletRequest request,
             @NotNull final HttpServletResponse response,
             @Nullable final String contentDisposition
     );
@@ -52,6 +56,22 @@ public interface StorageObjectService {
             @Nullable final String name
     );
 
+    @NotNull
+    EntityWithDto<StorageObject, StorageObjectDto> createObject(
+            @NotNull final InputStream content,
+            @NotNull final String group,
+            @Nullable final String encryptionKey,
+            @Nullable final String name
+    );
+
+    @NotNull
+    EntityWithDto<StorageObject, StorageObjectDto> createObject(
+            @NotNull final UploadContent content,
+            @NotNull final String digest,
+            @NotNull final String group,
+            @NotNull final String name
+    );
+
     @NotNull
     EntityWithDto<StorageObject, StorageObjectDto> updateObject(
             @NotNull final String id,
@@ -65,5 +85,18 @@ public interface StorageObjectService {
             @Nullable final String name
     );
 
+    void overwriteObject(
+            @NotNull final String id,
+            @NotNull final InputStream content,
+            @Nullable final String encryptionKey,
+            @Nullable final String name
+    );
+
+    void rekeyObject(
+            @NotNull final String id,
+            @NotNull final String encryptionKey,
+            @NotNull final String newEncryptionKey
+    );
+
     void deleteObject(@NotNull final String id);
 }
\ No newline at end of file